@@ -1,5 +1,6 @@
 package ai.deeprunner.core.config;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
@@ -28,6 +29,20 @@ public class ElasticsearchConfig {
     @Value("${elasticsearch.api-key:}")
     private String apiKey;
 
+    // RestClient defaults; lower the socket timeout so callers can fall back quickly on a slow cluster
+    @Value("${elasticsearch.connect-timeout-ms:1000}")
+    private int connectTimeoutMs;
+
+    @Value("${elasticsearch.socket-timeout-ms:30000}")
+    private int socketTimeoutMs;
+
+    // RestClient defaults to 30 connections, 10 per node, which caps concurrent searches per node
+    @Value("${elasticsearch.max-connections:30}")
+    private int maxConnections;
+
+    @Value("${elasticsearch.max-connections-per-route:10}")
+    private int maxConnectionsPerRoute;
+
     private RestClient restClient;
 
     @Bean
@@ -44,17 +59,26 @@ public class ElasticsearchConfig {
                     .toArray(HttpHost[]::new);
 
             // Create REST client builder
-            org.elasticsearch.client.RestClientBuilder restClientBuilder = RestClient.builder(httpHosts);
-
-            // Add API key authentication if provided
-            if (apiKey != null && !apiKey.trim().isEmpty()) {
-                restClientBuilder.setHttpClientConfigCallback(httpClientBuilder -> {
+            org.elasticsearch.client.RestClientBuilder restClientBuilder = RestClient.builder(httpHosts)
+                    .setRequestConfigCallback(requestConfig -> requestConfig
+                            .setConnectTimeout(connectTimeoutMs)
+                            .setSocketTimeout(socketTimeoutMs));
+
+            boolean withApiKey = apiKey != null && !apiKey.trim().isEmpty();
+            restClientBuilder.setHttpClientConfigCallback(httpClientBuilder -> {
+                httpClientBuilder
+                        .setMaxConnTotal(maxConnections)
+                        .setMaxConnPerRoute(maxConnectionsPerRoute);
+                if (withApiKey) {
                     httpClientBuilder.setDefaultCredentialsProvider(
                             new org.apache.http.impl.client.BasicCredentialsProvider()
                     );
-                    return httpClientBuilder;
-                });
+                }
+                return httpClientBuilder;
+            });
 
+            // Add API key authentication if provided
+            if (withApiKey) {
                 restClientBuilder.setDefaultHeaders(
                         new org.apache.http.Header[]{
                                 new org.apache.http.message.BasicHeader("Authorization", "ApiKey " + apiKey)
@@ -90,6 +114,14 @@ public class ElasticsearchConfig {
         }
     }
 
+    /**
+     * Non-blocking client sharing the blocking client's transport and connection pool
+     */
+    @Bean
+    public ElasticsearchAsyncClient elasticsearchAsyncClient(ElasticsearchClient elasticsearchClient) {
+        return new ElasticsearchAsyncClient(elasticsearchClient._transport());
+    }
+
     @PreDestroy
     public void destroy() {
         if (restClient != null) {
@@ -3,14 +3,14 @@ package ai.deeprunner.core.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 @Component
 @Slf4j
-public class ThreadLocalTenantResolver implements HandlerInterceptor {
+public class ThreadLocalTenantResolver implements AsyncHandlerInterceptor {
     
     private static final ThreadLocal<String> tenantContext = new ThreadLocal<>();
     private static final String TENANT_ID_HEADER = "X-Tenant-ID";
@@ -36,6 +36,16 @@ public class ThreadLocalTenantResolver implements HandlerInterceptor {
         tenantContext.remove();
         log.debug("Removed tenant context");
     }
+
+    /**
+     * An async request leaves its thread without afterCompletion; it runs after the async dispatch,
+     * whose preHandle sets the tenant again on that thread
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        tenantContext.remove();
+    }
     
     /**
      * Get current tenant ID from thread local context
@@ -114,8 +114,8 @@ public class CommandHandlers {
                 // Note: In production, you might want to store document type in the command
                 documentIndexService.deleteDocument(
                     command.getTenantId(), 
-                    command.getDocumentId(),
-                    "document" // Default to "document" type
+                    "document", // Default to "document" type
+                    command.getDocumentId()
                 );
                 
                 log.info("Successfully deleted document from Elasticsearch: {} for tenant: {}", 
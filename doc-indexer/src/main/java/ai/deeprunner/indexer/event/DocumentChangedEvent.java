@@ -0,0 +1,35 @@
+package ai.deeprunner.indexer.event;
+
+import co.elastic.clients.elasticsearch._types.WriteResponseBase;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Application event published after a document write has been applied to Elasticsearch.
+ * Consumers use it to invalidate anything derived from the tenant's documents of that type.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentChangedEvent {
+    private String tenantId;
+    private String documentType;
+    private String documentId;
+    private Operation operation;
+    /**
+     * _seq_no and _primary_term of the write, or null if unknown; together they order writes to the document
+     */
+    private Long seqNo;
+    private Long primaryTerm;
+
+    public DocumentChangedEvent(String tenantId, String documentType, String documentId, Operation operation,
+                                WriteResponseBase response) {
+        this(tenantId, documentType, documentId, operation, response.seqNo(), response.primaryTerm());
+    }
+
+    public enum Operation {
+        INDEXED,  // created or replaced
+        DELETED   // soft-deleted
+    }
+}
@@ -1,7 +1,10 @@
 package ai.deeprunner.indexer.service;
 
+import ai.deeprunner.indexer.event.DocumentChangedEvent;
+import co.elastic.clients.elasticsearch._types.WriteResponseBase;
 import org.springframework.beans.factory.annotation.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -12,15 +15,18 @@ import java.util.Map;
  * Service for indexing documents in Elasticsearch with dynamic index resolution
  * Supports both shared indexes (multiple tenants) and isolated indexes (one tenant per index)
  * Strategy can vary per tenant - one tenant can use shared, another can use isolated
+ * Every successful write publishes a {@link DocumentChangedEvent}
  */
 @Service
 @Slf4j
 public class DocumentIndexService {
     
     private final ElasticsearchIndexer elasticsearchIndexer;
+    private final ApplicationEventPublisher eventPublisher;
     
-    public DocumentIndexService(ElasticsearchIndexer elasticsearchIndexer) {
+    public DocumentIndexService(ElasticsearchIndexer elasticsearchIndexer, ApplicationEventPublisher eventPublisher) {
         this.elasticsearchIndexer = elasticsearchIndexer;
+        this.eventPublisher = eventPublisher;
     }
     
     /**
@@ -47,7 +53,8 @@ public class DocumentIndexService {
             documentId, aliasName,  tenantId, documentType);
         
         // Write using alias
-        elasticsearchIndexer.indexDocument(aliasName, documentId, document);
+        WriteResponseBase response = elasticsearchIndexer.indexDocument(aliasName, documentId, document);
+        eventPublisher.publishEvent(new DocumentChangedEvent(tenantId, documentType, documentId, DocumentChangedEvent.Operation.INDEXED, response));
     }
     
     /**
@@ -78,7 +85,8 @@ public class DocumentIndexService {
         // Delete from write alias first
         log.info("Deleting document {} via WRITE alias {} ->(tenant: {}, docType: {})", documentId, writeAlias, tenantId, documentType);
         try {
-            elasticsearchIndexer.deleteDocument(writeAlias, documentId);
+            WriteResponseBase response = elasticsearchIndexer.deleteDocument(writeAlias, documentId);
+            eventPublisher.publishEvent(new DocumentChangedEvent(tenantId, documentType, documentId, DocumentChangedEvent.Operation.DELETED, response));
             return;
         } catch (IOException e) {
             log.warn("Delete from write alias failed for document {} (alias: {}): {}", documentId, writeAlias, e.getMessage());
@@ -87,7 +95,8 @@ public class DocumentIndexService {
         // Then delete from read alias
         log.info("Deleting document {} via READ alias {} ->(tenant: {}, docType: {})", documentId, readAlias, tenantId, documentType);
         try {
-            elasticsearchIndexer.deleteDocument(readAlias, documentId);
+            WriteResponseBase response = elasticsearchIndexer.deleteDocument(readAlias, documentId);
+            eventPublisher.publishEvent(new DocumentChangedEvent(tenantId, documentType, documentId, DocumentChangedEvent.Operation.DELETED, response));
         } catch (IOException e) {
             log.warn("Delete from read alias failed for document {} (alias: {}): {}", documentId, readAlias, e.getMessage());
             throw new RuntimeException("No document find with id " + documentId);
@@ -102,7 +111,7 @@ public class DocumentIndexService {
      * @throws IOException if Elasticsearch operation fails
      */
     public void deleteDocument(String tenantId, String documentId) throws IOException {
-        deleteDocument(tenantId, documentId, "document");
+        deleteDocument(tenantId, "document", documentId);
     }
 }
 
@@ -2,6 +2,7 @@ package ai.deeprunner.indexer.service;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch._types.InlineScript;
+import co.elastic.clients.elasticsearch._types.WriteResponseBase;
 import co.elastic.clients.elasticsearch.core.IndexRequest;
 import co.elastic.clients.elasticsearch.core.IndexResponse;
 import co.elastic.clients.elasticsearch.core.UpdateRequest;
@@ -31,9 +32,10 @@ public class ElasticsearchIndexer {
      * @param indexName target index name
      * @param documentId document ID
      * @param document document content as map
+     * @return write response carrying the new _seq_no, _primary_term and _version
      * @throws IOException if Elasticsearch operation fails
      */
-    public void indexDocument(String indexName, String documentId, Map<String, Object> document) throws IOException {
+    public WriteResponseBase indexDocument(String indexName, String documentId, Map<String, Object> document) throws IOException {
         try {
             IndexRequest<Map<String, Object>> request = IndexRequest.of(i -> i
                 .index(indexName)
@@ -45,6 +47,7 @@ public class ElasticsearchIndexer {
             
             log.info("Indexed document in Elasticsearch - Index: {}, Document: {}, Version: {}", 
                 indexName, documentId, response.version());
+            return response;
         } catch (IOException e) {
             log.error("Failed to index document {} in index {}", documentId, indexName, e);
             throw e;
@@ -56,9 +59,10 @@ public class ElasticsearchIndexer {
      * 
      * @param indexName target index name
      * @param documentId document ID to delete
+     * @return write response carrying the new _seq_no, _primary_term and _version
      * @throws IOException if Elasticsearch operation fails
      */
-    public void deleteDocument(String indexName, String documentId) throws IOException {
+    public WriteResponseBase deleteDocument(String indexName, String documentId) throws IOException {
         try {
             UpdateRequest<Object, Object> updateRequest = UpdateRequest.of(u -> u
                     .index(indexName)       // index or alias
@@ -75,6 +79,7 @@ public class ElasticsearchIndexer {
 
             log.info("Deleted document from Elasticsearch - Index: {}, Document: {}, Result: {}", 
                 indexName, documentId, updateResponse.result());
+            return updateResponse;
         } catch (IOException e) {
             log.error("Failed to delete document {} from index {}", documentId, indexName, e);
             throw e;
@@ -0,0 +1,77 @@
+package ai.deeprunner.searcher.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Point-in-time snapshot of cache counters
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStats {
+    /**
+     * Lookups that returned a live entry; for the search cache, a fresh one
+     */
+    private long hitCount;
+
+    /**
+     * Lookups that found nothing or an expired entry
+     */
+    private long missCount;
+
+    /**
+     * hitCount / lookups; for the search cache, lookups also count stale and invalidated entries
+     */
+    private double hitRate;
+
+    /**
+     * Stale entries served while being refreshed in the background
+     */
+    private long staleHitCount;
+
+    /**
+     * Entries found superseded by a write, searched again rather than served
+     */
+    private long invalidatedHitCount;
+
+    /**
+     * Stale or invalidated entries served because Elasticsearch failed
+     */
+    private long errorFallbackCount;
+
+    /**
+     * Number of entries currently held
+     */
+    private long entryCount;
+
+    /**
+     * Estimated retained size of all entries, in bytes
+     */
+    private long weightedSize;
+
+    /**
+     * Configured weight budget, in bytes
+     */
+    private long maximumWeight;
+
+    /**
+     * Weight protected from eviction by other tenants' pressure, in bytes; tenant partitions only
+     */
+    private long minimumWeight;
+
+    /**
+     * Cumulative removals, keyed by cause
+     */
+    private Map<RemovalCause, Long> removalsByCause;
+
+    /**
+     * Number of live entries per estimated-size bucket
+     */
+    private Map<String, Long> entryWeightHistogram;
+}
@@ -0,0 +1,39 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.SearchResponse;
+
+/**
+ * Cached search response tagged with the generation it was computed under and the time
+ * after which it should be refreshed. Holds either the response objects or, in serialized
+ * mode, only the rendered JSON bytes.
+ */
+public final class CachedSearchResponse {
+    private final SearchResponse response;
+    private final SerializedSearchResponse serialized;
+    private final long generation;
+    private final long softExpiresAtNanos;
+
+    CachedSearchResponse(SearchResponse response, SerializedSearchResponse serialized,
+                         long generation, long softExpiresAtNanos) {
+        this.response = response;
+        this.serialized = serialized;
+        this.generation = generation;
+        this.softExpiresAtNanos = softExpiresAtNanos;
+    }
+
+    SearchResponse getResponse() {
+        return response;
+    }
+
+    SerializedSearchResponse getSerialized() {
+        return serialized;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    boolean isSoftExpired(long now) {
+        return now - softExpiresAtNanos >= 0;
+    }
+}
@@ -0,0 +1,809 @@
+package ai.deeprunner.searcher.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded concurrent cache using the W-TinyLFU eviction policy.
+ * <p>
+ * Entries live in a shared {@link ConcurrentHashMap}, so lookups are lock-free. Policy state is
+ * split across lock-striped segments: each segment keeps a small LRU admission window and a
+ * segmented-LRU main space (probation + protected). An entry leaving the window only enters the
+ * main space if the segment's frequency sketch rates it above the main-space victim, so one-hit
+ * wonders cannot flush hot entries. Reads reorder entries only when the segment lock is free,
+ * which keeps a contended read from ever blocking. Eviction is O(1) per entry.
+ * <p>
+ * Capacity is a weight budget: each entry is weighed once on insert by the supplied
+ * {@link Weigher}, and entries heavier than the maximum entry weight are rejected. The budget is
+ * split across as many segments as keep room for several of the heaviest admissible entries each,
+ * so a cache of large entries trades lock striping for being able to hold them at all.
+ * Each entry carries its own expiry; expired entries are dropped when read or when they reach
+ * the eviction end of a queue. Several caches can report their weight into one shared counter
+ * so an owner can enforce a budget across them with {@link #evict(long)}. An optional
+ * {@link RemovalListener} sees every value that leaves the cache or is refused admission.
+ */
+final class ConcurrentTinyLfuCache<K, V> {
+
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MIN_ENTRIES_PER_SEGMENT = 4;
+    private static final int DEFAULT_MAX_ENTRY_SHARE = 64;
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.80;
+    private static final int ADMIT_HASHDOS_THRESHOLD = 6;
+    private static final int HISTOGRAM_BUCKETS = 16;
+    private static final int HISTOGRAM_BASE_SHIFT = 10;
+    private static final int INITIAL_SKETCH_ENTRIES = 16;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final long defaultTtlNanos;
+    private final long maximumWeight;
+    private final long maximumEntryWeight;
+    private final Weigher<K, V> weigher;
+    private final RemovalListener<K, V> removalListener;
+    private final Metrics<K, V> metrics;
+
+    /**
+     * A live entry with its estimated access frequency and {@link System#nanoTime()} expiry,
+     * as reported by {@link #hottest(int)}.
+     */
+    record HotEntry<K, V>(K key, V value, int frequency, long expiresAtNanos) {
+    }
+
+    /**
+     * Receives values leaving the cache, e.g. to release resources they hold. Called while the
+     * owning segment is locked, so it must be quick and must not call back into the cache.
+     */
+    @FunctionalInterface
+    interface RemovalListener<K, V> {
+        void onRemoval(K key, V value, RemovalCause cause);
+    }
+
+    /**
+     * Computes the retained weight of an entry, in the same unit as the maximum weight.
+     */
+    @FunctionalInterface
+    interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    /**
+     * @param maximumWeight maximum total weight held across all segments
+     * @param defaultTtl time-to-live applied by {@link #put(Object, Object)}
+     * @param weigher weight of a single entry
+     */
+    ConcurrentTinyLfuCache(long maximumWeight, Duration defaultTtl, Weigher<K, V> weigher) {
+        this(maximumWeight, defaultTtl, weigher, null);
+    }
+
+    /**
+     * @param maximumWeight maximum total weight held across all segments
+     * @param defaultTtl time-to-live applied by {@link #put(Object, Object)}
+     * @param weigher weight of a single entry
+     * @param sharedWeight counter that also tracks this cache's weight, or null
+     */
+    ConcurrentTinyLfuCache(long maximumWeight, Duration defaultTtl, Weigher<K, V> weigher, LongAdder sharedWeight) {
+        this(maximumWeight, defaultTtl, weigher, sharedWeight, null);
+    }
+
+    /**
+     * @param maximumWeight maximum total weight held across all segments
+     * @param defaultTtl time-to-live applied by {@link #put(Object, Object)}
+     * @param weigher weight of a single entry
+     * @param sharedWeight counter that also tracks this cache's weight, or null
+     * @param removalListener notified of every removed, replaced or refused value, or null
+     */
+    ConcurrentTinyLfuCache(long maximumWeight, Duration defaultTtl, Weigher<K, V> weigher, LongAdder sharedWeight,
+                           RemovalListener<K, V> removalListener) {
+        this(maximumWeight, Math.max(1, maximumWeight / DEFAULT_MAX_ENTRY_SHARE), defaultTtl, weigher, sharedWeight,
+            removalListener);
+    }
+
+    /**
+     * @param maximumWeight maximum total weight held across all segments
+     * @param maximumEntryWeight heaviest entry admitted; fewer segments are used the larger it is
+     * @param defaultTtl time-to-live applied by {@link #put(Object, Object)}
+     * @param weigher weight of a single entry
+     * @param sharedWeight counter that also tracks this cache's weight, or null
+     * @param removalListener notified of every removed, replaced or refused value, or null
+     */
+    @SuppressWarnings("unchecked")
+    ConcurrentTinyLfuCache(long maximumWeight, long maximumEntryWeight, Duration defaultTtl, Weigher<K, V> weigher,
+                           LongAdder sharedWeight, RemovalListener<K, V> removalListener) {
+        if (maximumWeight <= 0) throw new IllegalArgumentException("maximumWeight must be > 0");
+        if (maximumEntryWeight <= 0) throw new IllegalArgumentException("maximumEntryWeight must be > 0");
+        if (defaultTtl == null || defaultTtl.isNegative() || defaultTtl.isZero()) {
+            throw new IllegalArgumentException("defaultTtl must be > 0");
+        }
+        this.metrics = new Metrics<>(sharedWeight, removalListener);
+        this.maximumEntryWeight = Math.min(maximumEntryWeight, maximumWeight);
+        int segmentCount = segmentCount(maximumWeight, this.maximumEntryWeight);
+        this.segments = new Segment[segmentCount];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        long base = maximumWeight / segmentCount;
+        long remainder = maximumWeight % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(base + (i < remainder ? 1 : 0), this.maximumEntryWeight, metrics);
+        }
+        this.defaultTtlNanos = defaultTtl.toNanos();
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * Entry-count bounded cache: every entry weighs 1.
+     */
+    ConcurrentTinyLfuCache(long maximumSize, Duration defaultTtl) {
+        this(maximumSize, 1, defaultTtl, (key, value) -> 1, null, null);
+    }
+
+    /**
+     * @return the live value for the key, or null if absent or expired
+     */
+    V get(K key) {
+        return get(key, true);
+    }
+
+    /**
+     * Look up the key as {@link #get} does, counting the access for admission and eviction but
+     * not as a hit or miss, for owners that decide themselves whether the value was usable
+     *
+     * @return the live value for the key, or null if absent or expired
+     */
+    V access(K key) {
+        return get(key, false);
+    }
+
+    private V get(K key, boolean recordStats) {
+        int hash = spread(key.hashCode());
+        Segment<K, V> segment = segmentFor(hash);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            if (recordStats) {
+                metrics.misses.increment();
+            }
+            segment.recordMiss(hash);
+            return null;
+        }
+        if (node.isExpired(System.nanoTime())) {
+            if (recordStats) {
+                metrics.misses.increment();
+            }
+            segment.expire(node, data);
+            return null;
+        }
+        if (recordStats) {
+            metrics.hits.increment();
+        }
+        segment.recordHit(node);
+        return node.value;
+    }
+
+    /**
+     * @return the live value for the key, or null, without counting as access
+     */
+    V peek(K key) {
+        Node<K, V> node = data.get(key);
+        return node == null || node.isExpired(System.nanoTime()) ? null : node.value;
+    }
+
+    /**
+     * Insert or replace a value using the default time-to-live.
+     */
+    void put(K key, V value) {
+        put(key, value, defaultTtlNanos);
+    }
+
+    /**
+     * Insert or replace a value with an explicit time-to-live.
+     */
+    void put(K key, V value, Duration ttl) {
+        put(key, value, ttl.toNanos());
+    }
+
+    private void put(K key, V value, long ttlNanos) {
+        if (key == null || value == null) throw new NullPointerException("key and value are required");
+        int hash = spread(key.hashCode());
+        int weight = Math.max(1, weigher.weigh(key, value));
+        long expiresAt = System.nanoTime() + ttlNanos;
+        segmentFor(hash).put(key, hash, value, weight, expiresAt, data);
+    }
+
+    /**
+     * Remove the entry for the key, if present.
+     */
+    void invalidate(K key) {
+        int hash = spread(key.hashCode());
+        segmentFor(hash).remove(key, data);
+    }
+
+    /**
+     * Evict entries in policy order, spread across segments, until at least the given weight
+     * has been freed or the cache is empty.
+     *
+     * @return weight actually freed
+     */
+    long evict(long weight) {
+        long freed = 0;
+        int start = ThreadLocalRandom.current().nextInt(segments.length);
+        while (freed < weight) {
+            long freedThisPass = 0;
+            for (int i = 0; i < segments.length && freed < weight; i++) {
+                long share = Math.max(1, (weight - freed) / (segments.length - i));
+                long released = segments[(start + i) % segments.length].evictVictims(share, data);
+                freedThisPass += released;
+                freed += released;
+            }
+            if (freedThisPass == 0) {
+                break;
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Live entries ranked by estimated access frequency, most frequent first. Ties favour the
+     * protected space, then probation, then the admission window. Does not count as access.
+     *
+     * @param limit maximum number of entries returned
+     */
+    List<HotEntry<K, V>> hottest(int limit) {
+        List<HotEntry<K, V>> entries = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Segment<K, V> segment : segments) {
+            segment.collect(entries, now);
+        }
+        entries.sort(Comparator.comparingInt((HotEntry<K, V> entry) -> entry.frequency()).reversed());
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    /**
+     * Remove every expired entry, which would otherwise stay until read or evicted.
+     */
+    void cleanUp() {
+        for (Segment<K, V> segment : segments) {
+            segment.removeExpired(data);
+        }
+    }
+
+    /**
+     * Remove every entry.
+     */
+    void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear(data);
+        }
+    }
+
+    /**
+     * @return approximate number of entries currently held
+     */
+    long size() {
+        return data.size();
+    }
+
+    /**
+     * @return current total weight of all entries
+     */
+    long weightedSize() {
+        return metrics.weightedSize.sum();
+    }
+
+    long maximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * @return weight above which entries are refused admission
+     */
+    long maximumEntryWeight() {
+        return maximumEntryWeight;
+    }
+
+    /**
+     * @return point-in-time snapshot of hit, eviction and entry-weight counters
+     */
+    CacheStats stats() {
+        Map<RemovalCause, Long> evictions = new EnumMap<>(RemovalCause.class);
+        for (RemovalCause cause : RemovalCause.values()) {
+            evictions.put(cause, metrics.removals[cause.ordinal()].sum());
+        }
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            String label = i == HISTOGRAM_BUCKETS - 1
+                ? ">" + formatBytes(1L << (HISTOGRAM_BASE_SHIFT + i - 1))
+                : "<=" + formatBytes(1L << (HISTOGRAM_BASE_SHIFT + i));
+            histogram.put(label, metrics.weightHistogram[i].sum());
+        }
+        long hits = metrics.hits.sum();
+        long misses = metrics.misses.sum();
+        return CacheStats.builder()
+            .hitCount(hits)
+            .missCount(misses)
+            .hitRate(hits + misses == 0 ? 0.0 : (double) hits / (hits + misses))
+            .entryCount(data.size())
+            .weightedSize(metrics.weightedSize.sum())
+            .maximumWeight(maximumWeight)
+            .removalsByCause(evictions)
+            .entryWeightHistogram(histogram)
+            .build();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes >= 1L << 20) return (bytes >> 20) + "MiB";
+        return (bytes >> 10) + "KiB";
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static int segmentCount(long maximumWeight, long maximumEntryWeight) {
+        int count = Integer.highestOneBit(Math.min(MAX_SEGMENTS, Runtime.getRuntime().availableProcessors() * 2));
+        while (count > 1 && maximumWeight / count < maximumEntryWeight * MIN_ENTRIES_PER_SEGMENT) {
+            count >>= 1;
+        }
+        return count;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private enum Queue {
+        WINDOW, PROBATION, PROTECTED, REMOVED
+    }
+
+    /**
+     * Lock-free counters shared by all segments.
+     */
+    private static final class Metrics<K, V> {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder weightedSize = new LongAdder();
+        final LongAdder[] removals = newAdders(RemovalCause.values().length);
+        final LongAdder[] weightHistogram = newAdders(HISTOGRAM_BUCKETS);
+        final LongAdder sharedWeight;
+        final RemovalListener<K, V> listener;
+
+        Metrics(LongAdder sharedWeight, RemovalListener<K, V> listener) {
+            this.sharedWeight = sharedWeight;
+            this.listener = listener;
+        }
+
+        void recordRemoval(K key, V value, RemovalCause cause) {
+            removals[cause.ordinal()].increment();
+            if (listener != null) {
+                listener.onRemoval(key, value, cause);
+            }
+        }
+
+        void recordWeight(int weight, int delta) {
+            weightedSize.add((long) weight * delta);
+            if (sharedWeight != null) {
+                sharedWeight.add((long) weight * delta);
+            }
+            weightHistogram[bucket(weight)].add(delta);
+        }
+
+        private static int bucket(int weight) {
+            int log2 = 32 - Integer.numberOfLeadingZeros(Math.max(0, weight - 1));
+            return Math.min(HISTOGRAM_BUCKETS - 1, Math.max(0, log2 - HISTOGRAM_BASE_SHIFT));
+        }
+
+        private static LongAdder[] newAdders(int count) {
+            LongAdder[] adders = new LongAdder[count];
+            for (int i = 0; i < count; i++) {
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final int hash;
+        volatile V value;
+        volatile long expiresAt;
+        int weight;
+        Queue queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, int hash, V value, int weight, long expiresAt) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked access-order list; head is least recently used.
+     */
+    private static final class AccessOrderList<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+
+        void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void unlink(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != tail) {
+                unlink(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+        }
+    }
+
+    /**
+     * One lock stripe: owns the policy queues and frequency sketch for the keys hashed to it.
+     */
+    private static final class Segment<K, V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final AccessOrderList<K, V> window = new AccessOrderList<>();
+        final AccessOrderList<K, V> probation = new AccessOrderList<>();
+        final AccessOrderList<K, V> protectedList = new AccessOrderList<>();
+        final FrequencySketch sketch;
+        final Metrics<K, V> metrics;
+        final long maximum;
+        final long maximumEntry;
+        final long windowMaximum;
+        final long protectedMaximum;
+        long windowSize;
+        long mainSize;
+        long protectedSize;
+        long entryCount;
+
+        Segment(long maximum, long maximumEntry, Metrics<K, V> metrics) {
+            this.maximum = Math.max(1, maximum);
+            this.maximumEntry = Math.min(this.maximum, maximumEntry);
+            this.windowMaximum = Math.max(1, (long) (this.maximum * WINDOW_RATIO));
+            this.protectedMaximum = (long) ((this.maximum - windowMaximum) * PROTECTED_RATIO);
+            // sized by entry count, not weight, so it starts small and grows with the segment
+            this.sketch = new FrequencySketch(Math.min(this.maximum, INITIAL_SKETCH_ENTRIES));
+            this.metrics = metrics;
+        }
+
+        void recordMiss(int hash) {
+            if (lock.tryLock()) {
+                try {
+                    sketch.increment(hash);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        void recordHit(Node<K, V> node) {
+            if (lock.tryLock()) {
+                try {
+                    sketch.increment(node.hash);
+                    onAccess(node);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        void expire(Node<K, V> node, ConcurrentHashMap<K, Node<K, V>> data) {
+            lock.lock();
+            try {
+                if (node.queue != Queue.REMOVED && node.isExpired(System.nanoTime())) {
+                    removeNode(node, RemovalCause.EXPIRED, data);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(K key, int hash, V value, int weight, long expiresAt, ConcurrentHashMap<K, Node<K, V>> data) {
+            lock.lock();
+            try {
+                sketch.increment(hash);
+                Node<K, V> existing = data.get(key);
+                if (weight > maximumEntry) {
+                    // never admit an entry heavier than the segments were sized for; drop any stale value
+                    if (existing != null) {
+                        removeNode(existing, RemovalCause.EXPLICIT, data);
+                    }
+                    metrics.recordRemoval(key, value, RemovalCause.TOO_LARGE);
+                    return;
+                }
+                if (existing != null) {
+                    V replaced = existing.value;
+                    metrics.recordWeight(existing.weight, -1);
+                    adjustWeight(existing, weight - existing.weight);
+                    existing.weight = weight;
+                    existing.value = value;
+                    metrics.recordRemoval(key, replaced, RemovalCause.REPLACED);
+                    existing.expiresAt = expiresAt;
+                    metrics.recordWeight(weight, 1);
+                    onAccess(existing);
+                    evict(data);
+                    return;
+                }
+                Node<K, V> node = new Node<>(key, hash, value, weight, expiresAt);
+                data.put(key, node);
+                node.queue = Queue.WINDOW;
+                window.addLast(node);
+                windowSize += weight;
+                entryCount++;
+                sketch.ensureCapacity(entryCount);
+                metrics.recordWeight(weight, 1);
+                evict(data);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void adjustWeight(Node<K, V> node, int delta) {
+            switch (node.queue) {
+                case WINDOW -> windowSize += delta;
+                case PROBATION -> mainSize += delta;
+                case PROTECTED -> {
+                    protectedSize += delta;
+                    mainSize += delta;
+                }
+                case REMOVED -> {
+                    // not linked; nothing to account
+                }
+            }
+        }
+
+        void remove(K key, ConcurrentHashMap<K, Node<K, V>> data) {
+            lock.lock();
+            try {
+                Node<K, V> node = data.get(key);
+                if (node != null) {
+                    removeNode(node, RemovalCause.EXPLICIT, data);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void removeExpired(ConcurrentHashMap<K, Node<K, V>> data) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                for (AccessOrderList<K, V> list : List.of(window, probation, protectedList)) {
+                    Node<K, V> node = list.head;
+                    while (node != null) {
+                        Node<K, V> next = node.next;
+                        if (node.isExpired(now)) {
+                            removeNode(node, RemovalCause.EXPIRED, data);
+                        }
+                        node = next;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear(ConcurrentHashMap<K, Node<K, V>> data) {
+            lock.lock();
+            try {
+                clearList(window, data);
+                clearList(probation, data);
+                clearList(protectedList, data);
+                window.clear();
+                probation.clear();
+                protectedList.clear();
+                windowSize = 0;
+                mainSize = 0;
+                protectedSize = 0;
+                entryCount = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clearList(AccessOrderList<K, V> list, ConcurrentHashMap<K, Node<K, V>> data) {
+            for (Node<K, V> node = list.head; node != null; node = node.next) {
+                node.queue = Queue.REMOVED;
+                data.remove(node.key, node);
+                metrics.recordWeight(node.weight, -1);
+                metrics.recordRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+            }
+        }
+
+        private void onAccess(Node<K, V> node) {
+            switch (node.queue) {
+                case WINDOW -> window.moveToBack(node);
+                case PROTECTED -> protectedList.moveToBack(node);
+                case PROBATION -> {
+                    probation.unlink(node);
+                    node.queue = Queue.PROTECTED;
+                    protectedList.addLast(node);
+                    protectedSize += node.weight;
+                    while (protectedSize > protectedMaximum && protectedList.head != null) {
+                        Node<K, V> demoted = protectedList.head;
+                        protectedList.unlink(demoted);
+                        protectedSize -= demoted.weight;
+                        demoted.queue = Queue.PROBATION;
+                        probation.addLast(demoted);
+                    }
+                }
+                case REMOVED -> {
+                    // evicted concurrently; nothing to reorder
+                }
+            }
+        }
+
+        /**
+         * Move window overflow into probation as candidates, then evict until within bounds.
+         * A candidate displaces the probation victim only if it is more frequently used.
+         */
+        private void evict(ConcurrentHashMap<K, Node<K, V>> data) {
+            Node<K, V> candidate = null;
+            while (windowSize > windowMaximum && window.head != null) {
+                Node<K, V> node = window.head;
+                window.unlink(node);
+                windowSize -= node.weight;
+                node.queue = Queue.PROBATION;
+                probation.addLast(node);
+                mainSize += node.weight;
+                if (candidate == null) {
+                    candidate = node;
+                }
+            }
+
+            long now = System.nanoTime();
+            while (windowSize + mainSize > maximum) {
+                Node<K, V> victim = probation.head != null ? probation.head : protectedList.head;
+                if (victim == null) {
+                    victim = window.head;
+                }
+                if (victim == null) {
+                    return;
+                }
+                RemovalCause victimCause = victim.isExpired(now) ? RemovalCause.EXPIRED : RemovalCause.SIZE;
+                if (candidate == null || candidate.queue != Queue.PROBATION) {
+                    removeNode(victim, victimCause, data);
+                    continue;
+                }
+                if (victim == candidate) {
+                    candidate = candidate.next;
+                    removeNode(victim, victimCause, data);
+                    continue;
+                }
+                if (victimCause == RemovalCause.EXPIRED || admit(candidate, victim)) {
+                    removeNode(victim, victimCause, data);
+                } else {
+                    Node<K, V> rejected = candidate;
+                    candidate = candidate.next;
+                    removeNode(rejected, RemovalCause.SIZE, data);
+                }
+            }
+        }
+
+        void collect(List<HotEntry<K, V>> entries, long now) {
+            lock.lock();
+            try {
+                collect(protectedList, entries, now);
+                collect(probation, entries, now);
+                collect(window, entries, now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void collect(AccessOrderList<K, V> list, List<HotEntry<K, V>> entries, long now) {
+            // most recently used first
+            for (Node<K, V> node = list.tail; node != null; node = node.prev) {
+                if (!node.isExpired(now)) {
+                    entries.add(new HotEntry<>(node.key, node.value, sketch.frequency(node.hash), node.expiresAt));
+                }
+            }
+        }
+
+        /**
+         * Evict policy victims regardless of the segment's own bound, for budgets enforced
+         * across caches. Stops once the target is freed or the segment is empty.
+         */
+        long evictVictims(long target, ConcurrentHashMap<K, Node<K, V>> data) {
+            lock.lock();
+            try {
+                long freed = 0;
+                long now = System.nanoTime();
+                while (freed < target) {
+                    Node<K, V> victim = probation.head != null ? probation.head
+                        : window.head != null ? window.head : protectedList.head;
+                    if (victim == null) {
+                        break;
+                    }
+                    freed += victim.weight;
+                    removeNode(victim, victim.isExpired(now) ? RemovalCause.EXPIRED : RemovalCause.SIZE, data);
+                }
+                return freed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+            int candidateFreq = sketch.frequency(candidate.hash);
+            int victimFreq = sketch.frequency(victim.hash);
+            if (candidateFreq > victimFreq) {
+                return true;
+            }
+            // a small random admission rate for warm candidates defeats attacks that pin a victim's count
+            return candidateFreq >= ADMIT_HASHDOS_THRESHOLD && ThreadLocalRandom.current().nextInt(128) == 0;
+        }
+
+        private void removeNode(Node<K, V> node, RemovalCause cause, ConcurrentHashMap<K, Node<K, V>> data) {
+            switch (node.queue) {
+                case WINDOW -> {
+                    window.unlink(node);
+                    windowSize -= node.weight;
+                }
+                case PROBATION -> {
+                    probation.unlink(node);
+                    mainSize -= node.weight;
+                }
+                case PROTECTED -> {
+                    protectedList.unlink(node);
+                    protectedSize -= node.weight;
+                    mainSize -= node.weight;
+                }
+                case REMOVED -> {
+                    return;
+                }
+            }
+            node.queue = Queue.REMOVED;
+            entryCount--;
+            data.remove(node.key, node);
+            metrics.recordWeight(node.weight, -1);
+            metrics.recordRemoval(node.key, node.value, cause);
+        }
+    }
+}
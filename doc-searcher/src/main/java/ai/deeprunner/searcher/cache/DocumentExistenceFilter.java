@@ -0,0 +1,363 @@
+package ai.deeprunner.searcher.cache;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answers lookups of documents that do not exist without a round trip to Elasticsearch.
+ * <p>
+ * Per tenant / document type, a scalable Bloom filter holds every document ID ever written, active
+ * or soft-deleted; an ID it does not contain was never indexed. The filter is built in the
+ * background from a scan of the read alias the first time the scope is looked up, kept current by
+ * the indexer's write events and peers' invalidation broadcasts, and rebuilt periodically. IDs
+ * written while a scan runs, or shortly before, are added to the new filter as well, so it never
+ * misses a write seen by this instance.
+ * <p>
+ * Misses that get past the filter, false positives and soft-deleted documents, are remembered in a
+ * short-TTL negative cache, dropped as soon as the document is written.
+ * <p>
+ * A negative answer is only as good as the write events behind it: while the invalidation
+ * subscription is down, peers' writes are lost, so lookups go to Elasticsearch until it is back and
+ * every scope has been rebuilt.
+ */
+@Component
+@Slf4j
+public class DocumentExistenceFilter {
+
+    private static final int RECENT_WRITES_PURGE_THRESHOLD = 10_000;
+
+    private final DocumentIdSource idSource;
+    private final boolean enabled;
+    private final long initialCapacity;
+    private final double falsePositiveRate;
+    private final long maxIds;
+    private final long rebuildNanos;
+    private final long retryNanos;
+    private final long recentWindowNanos;
+    private final ConcurrentTinyLfuCache<DocumentKey, Miss> misses;
+    private final ConcurrentMap<String, Scope> scopes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<DocumentKey, Long> recentWrites = new ConcurrentHashMap<>();
+    private final LongAdder definiteMisses = new LongAdder();
+    private volatile boolean suspended;
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "document-filter-build");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DocumentExistenceFilter(DocumentIdSource idSource,
+                                   @Value("${search.document-filter.enabled:false}") boolean enabled,
+                                   @Value("${search.document-filter.initial-capacity:10000}") long initialCapacity,
+                                   @Value("${search.document-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                                   @Value("${search.document-filter.max-ids:5000000}") long maxIds,
+                                   @Value("${search.document-filter.rebuild-minutes:10}") long rebuildMinutes,
+                                   @Value("${search.document-filter.retry-seconds:60}") long retrySeconds,
+                                   @Value("${search.document-filter.recent-window-seconds:30}") long recentWindowSeconds,
+                                   @Value("${search.document-filter.negative-ttl-seconds:10}") long negativeTtlSeconds,
+                                   @Value("${search.document-filter.negative-max-entries:100000}") long negativeMaxEntries) {
+        this.idSource = idSource;
+        this.enabled = enabled;
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxIds = maxIds;
+        this.rebuildNanos = TimeUnit.MINUTES.toNanos(rebuildMinutes);
+        this.retryNanos = TimeUnit.SECONDS.toNanos(retrySeconds);
+        this.recentWindowNanos = TimeUnit.SECONDS.toNanos(recentWindowSeconds);
+        this.misses = new ConcurrentTinyLfuCache<>(negativeMaxEntries, Duration.ofSeconds(negativeTtlSeconds));
+    }
+
+    @PreDestroy
+    public void stop() {
+        buildExecutor.shutdownNow();
+    }
+
+    /**
+     * @return value to pass to {@link #recordMissing} for a lookup about to go to Elasticsearch
+     */
+    public long stamp(DocumentKey key) {
+        if (enabled) {
+            scope(key.tenantId(), key.documentType());
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * @param activeOnly whether a soft-deleted document counts as missing
+     * @return true if the document certainly does not exist, or is soft-deleted when activeOnly
+     */
+    public boolean isKnownMissing(DocumentKey key, boolean activeOnly) {
+        if (!enabled || suspended) {
+            return false;
+        }
+        Scope scope = scope(key.tenantId(), key.documentType());
+        Miss miss = misses.get(key);
+        if (miss != null && miss.scopeEpoch() == scope.epoch.get() && (activeOnly || !miss.deleted())) {
+            return true;
+        }
+        ScalableBloomFilter filter = scope.filter(System.nanoTime());
+        if (filter != null && !filter.mightContain(key.documentId())) {
+            definiteMisses.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remember that Elasticsearch did not return the document, unless it was written since the lookup started
+     *
+     * @param deleted whether the document exists but is soft-deleted
+     * @param stamp value of {@link #stamp} taken before the lookup
+     */
+    public void recordMissing(DocumentKey key, boolean deleted, long stamp) {
+        if (!enabled) {
+            return;
+        }
+        Scope scope = scope(key.tenantId(), key.documentType());
+        misses.put(key, new Miss(deleted, scope.epoch.get()));
+        // checked after the put: a write either sees the entry and drops it, or is seen here
+        Long writtenAt = recentWrites.get(key);
+        if ((writtenAt != null && writtenAt - stamp >= 0) || scope.invalidatedAtNanos - stamp >= 0) {
+            misses.invalidate(key);
+        }
+    }
+
+    /**
+     * Record a write to the document, so that it is no longer reported missing
+     */
+    public void recordWrite(DocumentKey key) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        recentWrites.put(key, now);
+        misses.invalidate(key);
+        Scope scope = scope(key.tenantId(), key.documentType());
+        // pending first: a build publishes its filter before clearing pending
+        ScalableBloomFilter pending = scope.pending;
+        if (pending != null) {
+            pending.add(key.documentId());
+        }
+        ScalableBloomFilter filter = scope.filter;
+        if (filter != null) {
+            filter.add(key.documentId());
+        }
+        if (recentWrites.size() > RECENT_WRITES_PURGE_THRESHOLD) {
+            recentWrites.values().removeIf(writtenAt -> now - writtenAt > recentWindowNanos);
+        }
+    }
+
+    /**
+     * Forget everything known about the tenant and document type, after writes whose IDs are unknown;
+     * the filter is rebuilt on the next lookup
+     */
+    public void invalidateScope(String tenantId, String documentType) {
+        if (!enabled) {
+            return;
+        }
+        Scope scope = scope(tenantId, documentType);
+        synchronized (scope) {
+            scope.invalidatedAtNanos = System.nanoTime();
+            scope.epoch.incrementAndGet();
+            scope.filter = null;
+            scope.nextBuildAtNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stop answering lookups as missing: writes may be going unseen from now on
+     */
+    public void suspend() {
+        if (enabled && !suspended) {
+            suspended = true;
+            log.warn("Document filter suspended: invalidation broadcasts may be lost");
+        }
+    }
+
+    /**
+     * Answer lookups again once writes are seen again; every scope is rebuilt first, since those
+     * missed meanwhile are unknown
+     */
+    public void resume() {
+        if (!enabled) {
+            return;
+        }
+        scopes.values().forEach(scope -> invalidateScope(scope.tenantId, scope.documentType));
+        suspended = false;
+    }
+
+    public Stats stats() {
+        long ready = 0;
+        long filterBytes = 0;
+        long filterIds = 0;
+        for (Scope scope : scopes.values()) {
+            ScalableBloomFilter filter = scope.filter;
+            if (filter != null) {
+                ready++;
+                filterBytes += filter.sizeInBytes();
+                filterIds += filter.count();
+            }
+        }
+        return Stats.builder()
+            .suspended(suspended)
+            .scopeCount(scopes.size())
+            .readyScopeCount(ready)
+            .filterIdCount(filterIds)
+            .filterBytes(filterBytes)
+            .definiteMissCount(definiteMisses.sum())
+            .negativeCache(enabled ? misses.stats() : CacheStats.builder().build())
+            .build();
+    }
+
+    private Scope scope(String tenantId, String documentType) {
+        return scopes.computeIfAbsent(tenantId + "/" + documentType, k -> new Scope(tenantId, documentType));
+    }
+
+    private void build(Scope scope) {
+        long epoch = scope.epoch.get();
+        long started = System.nanoTime();
+        ScalableBloomFilter next = new ScalableBloomFilter(initialCapacity, falsePositiveRate);
+        scope.pending = next;
+        try {
+            long[] seen = {0};
+            idSource.forEachId(scope.tenantId, scope.documentType, id -> {
+                if (++seen[0] > maxIds) {
+                    throw new TooManyIds();
+                }
+                next.add(id);
+            });
+            // writes just before the scan may not have been searchable yet
+            recentWrites.keySet().forEach(key -> {
+                if (key.tenantId().equals(scope.tenantId) && key.documentType().equals(scope.documentType)) {
+                    next.add(key.documentId());
+                }
+            });
+            synchronized (scope) {
+                if (scope.epoch.get() != epoch) {
+                    // written IDs unknown to this instance may be missing from the scan
+                    scope.nextBuildAtNanos = System.nanoTime();
+                    return;
+                }
+                scope.filter = next;
+                scope.nextBuildAtNanos = System.nanoTime() + rebuildNanos;
+            }
+            log.info("Built document filter for tenant {}, docType {}: {} IDs, {} bytes in {}ms", scope.tenantId,
+                scope.documentType, seen[0], next.sizeInBytes(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (TooManyIds e) {
+            scope.filter = null;
+            scope.nextBuildAtNanos = System.nanoTime() + rebuildNanos;
+            log.info("Not filtering lookups for tenant {}, docType {}: more than {} documents",
+                scope.tenantId, scope.documentType, maxIds);
+        } catch (IOException | RuntimeException e) {
+            // a previous filter, if any, is still kept current by writes
+            scope.nextBuildAtNanos = System.nanoTime() + retryNanos;
+            log.warn("Failed to build document filter for tenant {}, docType {}: {}",
+                scope.tenantId, scope.documentType, e.getMessage());
+        } finally {
+            scope.pending = null;
+            scope.scheduled.set(false);
+        }
+    }
+
+    /**
+     * Lookup state of one tenant / document type
+     */
+    private final class Scope {
+        final String tenantId;
+        final String documentType;
+        final AtomicLong epoch = new AtomicLong();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile ScalableBloomFilter filter;
+        volatile ScalableBloomFilter pending;
+        volatile long nextBuildAtNanos = System.nanoTime();
+        volatile long invalidatedAtNanos = System.nanoTime() - 1;
+
+        Scope(String tenantId, String documentType) {
+            this.tenantId = tenantId;
+            this.documentType = documentType;
+        }
+
+        /**
+         * @return the current filter, or null if not built yet; schedules a build when one is due
+         */
+        ScalableBloomFilter filter(long now) {
+            if (now - nextBuildAtNanos >= 0 && scheduled.compareAndSet(false, true)) {
+                try {
+                    buildExecutor.execute(() -> build(this));
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+            return filter;
+        }
+    }
+
+    /**
+     * A lookup Elasticsearch answered with no active document
+     */
+    private record Miss(boolean deleted, long scopeEpoch) {
+    }
+
+    private static final class TooManyIds extends RuntimeException {
+        TooManyIds() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Point-in-time counters of the filters and the negative cache
+     */
+    @Data
+    @Builder
+    public static class Stats {
+        /**
+         * Whether lookups are going to Elasticsearch because writes may be going unseen
+         */
+        private boolean suspended;
+
+        /**
+         * Tenant / document type pairs looked up
+         */
+        private long scopeCount;
+
+        /**
+         * Scopes whose filter is built and answering lookups
+         */
+        private long readyScopeCount;
+
+        /**
+         * IDs added to the built filters, counting repeated writes
+         */
+        private long filterIdCount;
+
+        /**
+         * Heap used by the built filters, in bytes
+         */
+        private long filterBytes;
+
+        /**
+         * Lookups answered as missing by a filter
+         */
+        private long definiteMissCount;
+
+        /**
+         * Lookups answered as missing by the negative cache
+         */
+        private CacheStats negativeCache;
+    }
+}
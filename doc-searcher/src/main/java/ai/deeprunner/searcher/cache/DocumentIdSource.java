@@ -0,0 +1,17 @@
+package ai.deeprunner.searcher.cache;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Lists the IDs of every document, active or soft-deleted, of a tenant and document type
+ */
+public interface DocumentIdSource {
+
+    /**
+     * Pass each document ID to the consumer; an ID may be passed more than once
+     *
+     * @throws IOException if the documents cannot be listed
+     */
+    void forEachId(String tenantId, String documentType, Consumer<String> consumer) throws IOException;
+}
@@ -0,0 +1,7 @@
+package ai.deeprunner.searcher.cache;
+
+/**
+ * Identity of a document in the document near-cache
+ */
+public record DocumentKey(String tenantId, String documentType, String documentId) {
+}
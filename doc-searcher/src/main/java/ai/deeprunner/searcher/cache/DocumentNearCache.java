@@ -0,0 +1,208 @@
+package ai.deeprunner.searcher.cache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Near-cache for hot documents fetched by ID.
+ * Sources are stored as JSON in direct memory, so a large working set does not grow the heap or
+ * GC pauses; only a small handle per document stays on heap, indexed by the same W-TinyLFU policy
+ * as the search cache and bounded by the off-heap capacity.
+ * <p>
+ * Each entry records the _seq_no and _primary_term it was read at. A write invalidates only the
+ * written document, and only copies older than the write; the write is remembered briefly so a
+ * fetch that raced with it cannot put the old copy back. When a replica cannot name the written
+ * documents, a whole tenant / document type is invalidated instead.
+ */
+@Component
+@Slf4j
+public class DocumentNearCache {
+
+    private static final int TOMBSTONE_PURGE_THRESHOLD = 10_000;
+    private static final TypeReference<Map<String, Object>> SOURCE_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long tombstoneNanos;
+    private final OffHeapArena arena;
+    private final ConcurrentTinyLfuCache<DocumentKey, OffHeapDocument> cache;
+    private final ConcurrentMap<DocumentKey, Tombstone> tombstones = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> scopeEpochs = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    public DocumentNearCache(ObjectMapper objectMapper,
+                             @Value("${search.document-cache.enabled:true}") boolean enabled,
+                             @Value("${search.document-cache.off-heap-bytes:33554432}") long offHeapBytes,
+                             @Value("${search.document-cache.block-size:512}") int blockSize,
+                             @Value("${search.document-cache.ttl-seconds:300}") long ttlSeconds,
+                             @Value("${search.document-cache.tombstone-ms:5000}") long tombstoneMs) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.tombstoneNanos = TimeUnit.MILLISECONDS.toNanos(tombstoneMs);
+        if (enabled) {
+            this.arena = new OffHeapArena(offHeapBytes, blockSize);
+            this.cache = new ConcurrentTinyLfuCache<>(arena.capacity(), Duration.ofSeconds(ttlSeconds),
+                (key, document) -> document.blocks().length * arena.blockSize(), null,
+                (key, document, cause) -> document.drop(arena));
+        } else {
+            this.arena = null;
+            this.cache = null;
+        }
+    }
+
+    /**
+     * @return value to pass to {@link #put} for a document about to be fetched
+     */
+    public long stamp(DocumentKey key) {
+        return enabled ? scopeEpoch(key.tenantId(), key.documentType()).get() : 0;
+    }
+
+    /**
+     * @return the cached source, or null if absent
+     */
+    public Map<String, Object> get(DocumentKey key) {
+        if (!enabled) {
+            return null;
+        }
+        OffHeapDocument document = cache.get(key);
+        if (document == null || document.scopeEpoch() != stamp(key) || !document.pin()) {
+            return null;
+        }
+        byte[] json;
+        try {
+            json = arena.read(document.blocks(), document.length());
+        } finally {
+            document.unpin(arena);
+        }
+        try {
+            return objectMapper.readValue(json, SOURCE_TYPE);
+        } catch (IOException e) {
+            log.warn("Dropping unreadable cached document {}: {}", key, e.getMessage());
+            cache.invalidate(key);
+            return null;
+        }
+    }
+
+    /**
+     * Cache a source read at the given sequence number. Dropped if a newer write to the document,
+     * or an invalidation of its whole scope, happened since the fetch started.
+     *
+     * @param stamp value of {@link #stamp} taken before the fetch
+     */
+    public void put(DocumentKey key, Map<String, Object> source, long seqNo, long primaryTerm, long version,
+                    long stamp) {
+        if (!enabled || source == null || stamp != stamp(key)) {
+            return;
+        }
+        Tombstone tombstone = tombstones.get(key);
+        if (tombstone != null && !tombstone.isExpired(System.nanoTime())
+            && tombstone.supersedes(primaryTerm, seqNo)) {
+            return;
+        }
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(source);
+        } catch (IOException e) {
+            log.warn("Not caching document {}: {}", key, e.getMessage());
+            return;
+        }
+        int[] blocks = arena.allocate(json.length);
+        if (blocks == null) {
+            // blocks still pinned by readers, or freed lazily: make room by policy and retry once
+            cache.evict((long) arena.blocksFor(json.length) * arena.blockSize() - arena.freeBytes());
+            blocks = arena.allocate(json.length);
+        }
+        if (blocks == null) {
+            rejected.increment();
+            return;
+        }
+        arena.write(blocks, json);
+        cache.put(key, new OffHeapDocument(blocks, json.length, seqNo, primaryTerm, version, stamp));
+    }
+
+    /**
+     * Drop cached copies of the document older than the write
+     *
+     * @param seqNo _seq_no of the write, or null to drop any copy
+     * @param primaryTerm _primary_term of the write, or null to drop any copy
+     */
+    public void invalidate(DocumentKey key, Long seqNo, Long primaryTerm) {
+        if (!enabled) {
+            return;
+        }
+        long term = seqNo == null || primaryTerm == null ? Long.MAX_VALUE : primaryTerm;
+        long seq = seqNo == null || primaryTerm == null ? Long.MAX_VALUE : seqNo;
+        long expiresAt = System.nanoTime() + tombstoneNanos;
+        tombstones.merge(key, new Tombstone(term, seq, expiresAt),
+            (previous, next) -> previous.supersedes(term, seq) ? previous.extend(expiresAt) : next);
+        OffHeapDocument cached = cache.peek(key);
+        if (cached != null && cached.isOlderThan(term, seq)) {
+            cache.invalidate(key);
+        }
+        if (tombstones.size() > TOMBSTONE_PURGE_THRESHOLD) {
+            long now = System.nanoTime();
+            tombstones.values().removeIf(t -> t.isExpired(now));
+        }
+    }
+
+    /**
+     * Drop every cached document of the tenant and document type
+     */
+    public void invalidateScope(String tenantId, String documentType) {
+        if (enabled) {
+            scopeEpoch(tenantId, documentType).incrementAndGet();
+        }
+    }
+
+    /**
+     * @return hit, weight and eviction counters; weights are off-heap bytes
+     */
+    public CacheStats stats() {
+        if (!enabled) {
+            return CacheStats.builder().build();
+        }
+        CacheStats stats = cache.stats();
+        Map<RemovalCause, Long> removals = stats.getRemovalsByCause();
+        // refused for lack of free off-heap blocks
+        removals.merge(RemovalCause.TOO_LARGE, rejected.sum(), Long::sum);
+        return stats;
+    }
+
+    private AtomicLong scopeEpoch(String tenantId, String documentType) {
+        return scopeEpochs.computeIfAbsent(tenantId + "/" + documentType, scope -> new AtomicLong());
+    }
+
+    /**
+     * A recent write: copies read before it must not be cached until it expires
+     */
+    private record Tombstone(long primaryTerm, long seqNo, long expiresAtNanos) {
+
+        /**
+         * @return true if a copy read at the given primary term and sequence number predates this write
+         */
+        boolean supersedes(long otherPrimaryTerm, long otherSeqNo) {
+            return primaryTerm > otherPrimaryTerm || (primaryTerm == otherPrimaryTerm && seqNo > otherSeqNo);
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+
+        Tombstone extend(long newExpiresAtNanos) {
+            return new Tombstone(primaryTerm, seqNo, Math.max(expiresAtNanos, newExpiresAtNanos));
+        }
+    }
+}
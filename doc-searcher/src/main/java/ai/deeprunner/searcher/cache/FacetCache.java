@@ -0,0 +1,114 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.AggregationResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache for the facets of searches, kept apart from the cached hit pages.
+ * <p>
+ * Facets depend only on which documents match, so one entry answers every page, sort and
+ * projection of a search, and facet navigation that revisits a combination of filters is served
+ * without a round trip. Entries are tagged with the tenant and document type generation, like hit
+ * pages, but a write does not drop them at once: counts a few writes behind are harmless for
+ * navigation, so every entry is served for max-staleness after it was computed, whatever was
+ * written meanwhile, and only past that age does a write make it stale. Searches that write often
+ * then recompute their facets at most once per max-staleness rather than on every page view.
+ */
+@Component
+@Slf4j
+public class FacetCache {
+
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int AGGREGATION_OVERHEAD = 96;
+    private static final int BUCKET_OVERHEAD = 80;
+
+    private final SearchCacheGenerations generations;
+    private final boolean enabled;
+    private final long maxStalenessNanos;
+    private final ConcurrentTinyLfuCache<FacetCacheKey, Entry> cache;
+
+    public FacetCache(SearchCacheGenerations generations,
+                      @Value("${search.facet-cache.enabled:true}") boolean enabled,
+                      @Value("${search.facet-cache.max-bytes:16777216}") long maxBytes,
+                      @Value("${search.facet-cache.ttl-seconds:300}") long ttlSeconds,
+                      @Value("${search.facet-cache.max-staleness-ms:5000}") long maxStalenessMs) {
+        this.generations = generations;
+        this.enabled = enabled;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMs);
+        this.cache = enabled
+            ? new ConcurrentTinyLfuCache<>(maxBytes, Duration.ofSeconds(ttlSeconds), FacetCache::weigh)
+            : null;
+    }
+
+    /**
+     * @return generation to pass to {@link #put} for facets about to be computed for the key
+     */
+    public long currentGeneration(FacetCacheKey key) {
+        return generations.current(key.getTenantId(), key.getDocumentType());
+    }
+
+    /**
+     * @return the cached facets if they are current, or were computed less than max-staleness ago
+     * regardless of writes since; otherwise null
+     */
+    public Map<String, AggregationResult> get(FacetCacheKey key) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.generation() == currentGeneration(key)
+            || System.nanoTime() - entry.computedAtNanos() < maxStalenessNanos) {
+            return entry.aggregations();
+        }
+        return null;
+    }
+
+    /**
+     * Cache facets computed under the given generation, unless a write happened since or may not
+     * be searchable yet
+     */
+    public void put(FacetCacheKey key, Map<String, AggregationResult> aggregations, long generation) {
+        if (enabled && SearchCacheGenerations.isSettled(generation) && generation == currentGeneration(key)) {
+            cache.put(key, new Entry(aggregations, generation, System.nanoTime()));
+        }
+    }
+
+    public void clear() {
+        if (enabled) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return hit, weight and eviction counters
+     */
+    public CacheStats stats() {
+        return enabled ? cache.stats() : CacheStats.builder().build();
+    }
+
+    private static int weigh(FacetCacheKey key, Entry entry) {
+        long size = ENTRY_OVERHEAD + 64L * key.aggregations().size();
+        for (AggregationResult aggregation : entry.aggregations().values()) {
+            size += AGGREGATION_OVERHEAD;
+            if (aggregation.getBuckets() != null) {
+                for (AggregationResult.Bucket bucket : aggregation.getBuckets()) {
+                    Object bucketKey = bucket.getKey();
+                    size += BUCKET_OVERHEAD + (bucketKey instanceof String s ? 2L * s.length() : 16);
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private record Entry(Map<String, AggregationResult> aggregations, long generation, long computedAtNanos) {
+    }
+}
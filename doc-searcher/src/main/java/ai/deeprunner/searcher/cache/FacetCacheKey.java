@@ -0,0 +1,69 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.AggregationRequest;
+import ai.deeprunner.searcher.model.SearchRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Canonical identity of the facets of a search in the facet cache: the matching documents, which
+ * the query, searched fields and filters decide, and the aggregations. Paging, sorting and
+ * projection do not change the facets, so every page of a search shares one entry.
+ *
+ * @param search canonical key of the matching documents, without paging, sorting or projection
+ * @param aggregations canonical aggregations, by name
+ */
+public record FacetCacheKey(SearchCacheKey search, Map<String, Object> aggregations) {
+
+    /**
+     * @param documentType effective document type (after defaulting)
+     */
+    public static FacetCacheKey of(String tenantId, String documentType, SearchRequest request) {
+        SearchRequest matching = SearchRequest.builder()
+            .query(request.getQuery())
+            .fields(request.getFields())
+            .filters(request.getFilters())
+            .build();
+        Map<String, Object> aggregations = new TreeMap<>();
+        if (request.getAggregations() != null) {
+            request.getAggregations().forEach((name, aggregation) ->
+                aggregations.put(name, SearchCacheKey.canonicalValue(canonicalAggregation(aggregation))));
+        }
+        return new FacetCacheKey(SearchCacheKey.of(tenantId, documentType, matching), aggregations);
+    }
+
+    public String getTenantId() {
+        return search.getTenantId();
+    }
+
+    public String getDocumentType() {
+        return search.getDocumentType();
+    }
+
+    /**
+     * Type and field trimmed and lower-cased where case does not matter; range order is kept, as it
+     * is the order of the buckets returned
+     */
+    private static List<Object> canonicalAggregation(AggregationRequest aggregation) {
+        if (aggregation == null) {
+            return Collections.emptyList();
+        }
+        List<Object> ranges = new ArrayList<>();
+        if (aggregation.getRanges() != null) {
+            for (AggregationRequest.Range range : aggregation.getRanges()) {
+                ranges.add(range == null ? null : Arrays.asList(range.getKey(), range.getFrom(), range.getTo()));
+            }
+        }
+        return Arrays.asList(
+            aggregation.getType() == null ? null : aggregation.getType().trim().toLowerCase(),
+            aggregation.getField() == null ? null : aggregation.getField().trim(),
+            aggregation.getSize(),
+            aggregation.getInterval(),
+            ranges);
+    }
+}
@@ -1,48 +1,461 @@
 package ai.deeprunner.searcher.cache;
 
 import ai.deeprunner.searcher.model.SearchResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Simple in-memory LRU cache for search responses.
- * Thread-safe via intrinsic synchronization on the map instance.
+ * In-memory cache for search responses.
+ * Backed by a lock-striped W-TinyLFU cache: reads are lock-free, frequency-based admission
+ * keeps one-off queries from evicting hot entries, and every entry expires after its TTL.
+ * The cache is bounded by the estimated retained size of its entries rather than their count,
+ * so pages with many or large documents are budgeted for what they actually cost.
+ * Entries are keyed by {@link SearchCacheKey}, the canonical form of the request, and tagged
+ * with the tenant and document type generation they were computed under; a write to that
+ * tenant and document type invalidates them.
+ * <p>
+ * Entries have two lifetimes: past the soft TTL they are {@link Freshness#STALE} and should be
+ * refreshed in the background while still being served; past the hard TTL they are gone.
+ * Stale and invalidated entries stay readable until the hard TTL so callers can fall back to
+ * them when Elasticsearch is unavailable.
+ * <p>
+ * The budget is partitioned by tenant so one tenant's scan cannot flush everyone else's hot
+ * entries. Each tenant has its own partition, capped at its maximum share of the budget. When the
+ * partitions together exceed the budget, entries are evicted from the tenants furthest above their
+ * minimum share; a tenant within its minimum share is only touched once the minimum shares
+ * themselves oversubscribe the budget. Expired entries are swept periodically, and a partition
+ * left empty is dropped, so tenants that stop searching do not hold memory.
+ * <p>
+ * Only fresh entries count as hits; stale entries served while refreshed and entries superseded
+ * by a write are counted apart from them.
+ * <p>
+ * In serialized mode entries keep only the response rendered as JSON (optionally gzipped) by
+ * {@link SearchResponseCodec}, so cache hits can be written to clients without re-serializing
+ * and the cache holds compact byte arrays instead of source map graphs.
  */
+@Slf4j
 @Component
 public class InMemorySearchCache {
 
-    private final Map<String, SearchResponse> cache;
+    /**
+     * How a cached entry may be used
+     */
+    public enum Freshness {
+        /** Current generation, within the soft TTL: serve as is */
+        FRESH,
+        /** Current generation, past the soft TTL: serve and refresh in the background */
+        STALE,
+        /** Superseded by a write: serve only when Elasticsearch is failing */
+        INVALIDATED
+    }
 
-    public InMemorySearchCache(@Value("${search.cache.max-entries:1000}") int maxEntries) {
-        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, SearchResponse> eldest) {
-                return size() > maxEntries;
-            }
-        };
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final LongAdder totalWeight = new LongAdder();
+    private final ReentrantLock rebalanceLock = new ReentrantLock();
+    private final SearchCacheGenerations generations;
+    private final SearchCacheTenantQuotas quotas;
+    private final SearchResponseCodec codec;
+    private final boolean serialized;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final Duration ttl;
+    private final long softTtlNanos;
+    private final long sweepSeconds;
+    private final LookupCounters lookups = new LookupCounters();
+    private final LongAdder errorFallbacks = new LongAdder();
+    /**
+     * Removals counted by partitions since dropped, so totals never go backwards
+     */
+    private final LongAdder[] retiredRemovals = new LongAdder[RemovalCause.values().length];
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "search-cache-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InMemorySearchCache(@Value("${search.cache.max-bytes:67108864}") long maxBytes,
+                               @Value("${search.cache.max-entry-bytes:2097152}") long maxEntryBytes,
+                               @Value("${search.cache.ttl-seconds:300}") long ttlSeconds,
+                               @Value("${search.cache.soft-ttl-seconds:60}") long softTtlSeconds,
+                               @Value("${search.cache.serialized.enabled:false}") boolean serialized,
+                               @Value("${search.cache.sweep-seconds:60}") long sweepSeconds,
+                               SearchCacheGenerations generations,
+                               SearchCacheTenantQuotas quotas,
+                               SearchResponseCodec codec) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.generations = generations;
+        this.quotas = quotas;
+        this.codec = codec;
+        this.serialized = serialized;
+        this.softTtlNanos = TimeUnit.SECONDS.toNanos(Math.min(softTtlSeconds, ttlSeconds));
+        this.sweepSeconds = sweepSeconds;
+        for (int i = 0; i < retiredRemovals.length; i++) {
+            retiredRemovals[i] = new LongAdder();
+        }
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        if (sweepSeconds > 0) {
+            sweeper.scheduleWithFixedDelay(this::sweep, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        sweeper.shutdownNow();
     }
 
-    public SearchResponse get(String key) {
-        synchronized (cache) {
-            return cache.get(key);
+    /**
+     * @return generation to pass to {@link #put} for a response about to be computed for the key
+     */
+    public long currentGeneration(SearchCacheKey key) {
+        return generations.current(key.getTenantId(), key.getDocumentType());
+    }
+
+    /**
+     * Look up the entry for a search about to be served, counting the lookup by the entry's
+     * freshness.
+     *
+     * @return the cached entry within its hard TTL, whatever its freshness, or null
+     */
+    public CachedSearchResponse getEntry(SearchCacheKey key) {
+        Partition partition = partitions.get(key.getTenantId());
+        CachedSearchResponse entry = partition != null ? partition.cache.access(key) : null;
+        Freshness freshness = entry != null ? freshness(key, entry) : null;
+        lookups.record(freshness);
+        if (partition != null) {
+            partition.lookups.record(freshness);
+        }
+        return entry;
+    }
+
+    /**
+     * @return how the entry, previously read for the key, may be used now
+     */
+    public Freshness freshness(SearchCacheKey key, CachedSearchResponse entry) {
+        if (entry.getGeneration() != currentGeneration(key)) {
+            return Freshness.INVALIDATED;
+        }
+        return entry.isSoftExpired(System.nanoTime()) ? Freshness.STALE : Freshness.FRESH;
+    }
+
+    /**
+     * @return the cached response if it is fresh, otherwise null
+     */
+    public SearchResponse get(SearchCacheKey key) throws IOException {
+        CachedSearchResponse entry = getEntry(key);
+        return entry != null && freshness(key, entry) == Freshness.FRESH ? responseOf(entry) : null;
+    }
+
+    /**
+     * Cache a response computed under the given generation. The response is dropped if a write
+     * happened since, or recently enough that Elasticsearch may not have made it searchable yet.
+     * Responses heavier than the maximum entry size are not admitted.
+     *
+     * @return the entry built for the response, whether or not it was cached
+     */
+    public CachedSearchResponse put(SearchCacheKey key, SearchResponse value, long generation) {
+        CachedSearchResponse entry = newEntry(value, generation);
+        if (SearchCacheGenerations.isSettled(generation) && generation == currentGeneration(key)) {
+            store(key, entry, ttl);
+        }
+        return entry;
+    }
+
+    /**
+     * @return whether entries are kept as JSON bytes that callers should write out directly
+     */
+    public boolean isSerialized() {
+        return serialized;
+    }
+
+    /**
+     * @return the entry's response objects, decoding them in serialized mode
+     */
+    public SearchResponse responseOf(CachedSearchResponse entry) throws IOException {
+        return entry.getResponse() != null ? entry.getResponse() : codec.decode(entry.getSerialized());
+    }
+
+    /**
+     * @return the entry rendered as JSON, encoding it unless already serialized
+     */
+    public SerializedSearchResponse serializedOf(CachedSearchResponse entry) throws IOException {
+        return entry.getSerialized() != null ? entry.getSerialized() : codec.encode(entry.getResponse());
+    }
+
+    /**
+     * Cache a response already rendered as JSON, as {@link #put(SearchCacheKey, SearchResponse, long)}.
+     * Outside serialized mode it is decoded to be cached as objects.
+     *
+     * @return the entry built for the response, whether or not it was cached
+     */
+    public CachedSearchResponse put(SearchCacheKey key, SerializedSearchResponse value, long generation)
+            throws IOException {
+        long softExpiresAt = System.nanoTime() + softTtlNanos;
+        CachedSearchResponse entry = serialized
+            ? new CachedSearchResponse(null, value, generation, softExpiresAt)
+            : new CachedSearchResponse(codec.decode(value), null, generation, softExpiresAt);
+        if (SearchCacheGenerations.isSettled(generation) && generation == currentGeneration(key)) {
+            store(key, entry, ttl);
+        }
+        return entry;
+    }
+
+    /**
+     * Re-insert a response restored from a snapshot. It is stored as stale so the first read
+     * refreshes it, and expires when it would have had it never left the cache.
+     *
+     * @param remainingTtl time left until the response's original hard TTL
+     */
+    public void restore(SearchCacheKey key, SerializedSearchResponse value, Duration remainingTtl) throws IOException {
+        long generation = currentGeneration(key);
+        if (!SearchCacheGenerations.isSettled(generation) || remainingTtl.isNegative() || remainingTtl.isZero()) {
+            return;
+        }
+        CachedSearchResponse entry = serialized
+            ? new CachedSearchResponse(null, value, generation, System.nanoTime())
+            : new CachedSearchResponse(codec.decode(value), null, generation, System.nanoTime());
+        store(key, entry, remainingTtl.compareTo(ttl) < 0 ? remainingTtl : ttl);
+    }
+
+    /**
+     * Capture the most frequently used entries across all tenants, without counting as access
+     *
+     * @param limit maximum number of entries captured
+     * @param includeResponses whether to capture responses or only the requests to re-run
+     */
+    public SearchCacheSnapshot snapshot(int limit, boolean includeResponses) throws IOException {
+        List<ConcurrentTinyLfuCache.HotEntry<SearchCacheKey, CachedSearchResponse>> entries = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            entries.addAll(partition.cache.hottest(limit));
+        }
+        entries.sort(Comparator.comparingInt(
+            (ConcurrentTinyLfuCache.HotEntry<SearchCacheKey, CachedSearchResponse> entry) -> entry.frequency())
+            .reversed());
+        long now = System.nanoTime();
+        List<SearchCacheSnapshot.Entry> captured = new ArrayList<>(Math.min(limit, entries.size()));
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            ConcurrentTinyLfuCache.HotEntry<SearchCacheKey, CachedSearchResponse> entry = entries.get(i);
+            SerializedSearchResponse response = includeResponses ? serializedOf(entry.value()) : null;
+            captured.add(new SearchCacheSnapshot.Entry(entry.key(), response,
+                TimeUnit.NANOSECONDS.toMillis(entry.expiresAtNanos() - now)));
         }
+        return new SearchCacheSnapshot(System.currentTimeMillis(), captured);
     }
 
-    public void put(String key, SearchResponse value) {
-        synchronized (cache) {
-            cache.put(key, value);
+    private CachedSearchResponse newEntry(SearchResponse value, long generation) {
+        long softExpiresAt = System.nanoTime() + softTtlNanos;
+        if (serialized) {
+            try {
+                return new CachedSearchResponse(null, codec.encode(value), generation, softExpiresAt);
+            } catch (IOException e) {
+                log.warn("Could not serialize search response, caching objects instead: {}", e.getMessage());
+            }
         }
+        return new CachedSearchResponse(value, null, generation, softExpiresAt);
+    }
+
+    /**
+     * Count a stale or invalidated entry served because Elasticsearch failed
+     */
+    public void recordErrorFallback() {
+        errorFallbacks.increment();
     }
 
     public void clear() {
-        synchronized (cache) {
-            cache.clear();
+        partitions.values().forEach(partition -> partition.cache.clear());
+    }
+
+    /**
+     * @return current hit, weight and eviction counters across all tenants
+     */
+    public CacheStats stats() {
+        long entries = 0;
+        Map<RemovalCause, Long> removals = new EnumMap<>(RemovalCause.class);
+        for (RemovalCause cause : RemovalCause.values()) {
+            removals.put(cause, retiredRemovals[cause.ordinal()].sum());
         }
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (Partition partition : partitions.values()) {
+            CacheStats stats = partition.cache.stats();
+            entries += stats.getEntryCount();
+            stats.getRemovalsByCause().forEach((cause, count) -> removals.merge(cause, count, Long::sum));
+            stats.getEntryWeightHistogram().forEach((bucket, count) -> histogram.merge(bucket, count, Long::sum));
+        }
+        CacheStats stats = CacheStats.builder()
+            .errorFallbackCount(errorFallbacks.sum())
+            .entryCount(entries)
+            .weightedSize(totalWeight.sum())
+            .maximumWeight(maxBytes)
+            .removalsByCause(removals)
+            .entryWeightHistogram(histogram)
+            .build();
+        lookups.describe(stats);
+        return stats;
+    }
+
+    /**
+     * @return counters for the tenant's partition, or null if the tenant has no cached entries;
+     * they restart when a partition left empty is dropped
+     */
+    public CacheStats tenantStats(String tenantId) {
+        Partition partition = partitions.get(tenantId);
+        if (partition == null) {
+            return null;
+        }
+        CacheStats stats = partition.cache.stats();
+        stats.setMinimumWeight(quotas.minimumBytes(tenantId, maxBytes));
+        partition.lookups.describe(stats);
+        return stats;
     }
-}
 
+    private Partition partition(String tenantId) {
+        Partition partition = partitions.get(tenantId);
+        if (partition != null) {
+            return partition;
+        }
+        return partitions.computeIfAbsent(tenantId, id -> new Partition(new ConcurrentTinyLfuCache<>(
+            quotas.maximumBytes(id, maxBytes), maxEntryBytes, ttl,
+            SearchResponseWeigher::weigh, totalWeight, null)));
+    }
 
+    private void store(SearchCacheKey key, CachedSearchResponse entry, Duration entryTtl) {
+        String tenantId = key.getTenantId();
+        Partition partition = partition(tenantId);
+        partition.cache.put(key, entry, entryTtl);
+        if (partitions.get(tenantId) != partition) {
+            // dropped by the sweeper meanwhile: take the entry's weight back out of the budget
+            partition.cache.invalidate(key);
+        }
+        enforceBudget();
+    }
+
+    /**
+     * Drop expired entries, then the partitions they leave empty. A put racing with a drop either
+     * lands before the dropped partition is cleared or sees it dropped and removes its entry.
+     */
+    void sweep() {
+        try {
+            for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+                Partition partition = entry.getValue();
+                partition.cache.cleanUp();
+                if (partition.cache.size() == 0 && partitions.remove(entry.getKey(), partition)) {
+                    partition.cache.clear();
+                    partition.cache.stats().getRemovalsByCause()
+                        .forEach((cause, count) -> retiredRemovals[cause.ordinal()].add(count));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Search cache sweep failed: {}", e.getMessage());
+        }
+    }
 
+    /**
+     * Bring the partitions back within the global budget. Only one caller rebalances at a time;
+     * others skip, so the budget may be briefly exceeded by in-flight puts.
+     */
+    private void enforceBudget() {
+        if (totalWeight.sum() <= maxBytes || !rebalanceLock.tryLock()) {
+            return;
+        }
+        try {
+            long excess = totalWeight.sum() - maxBytes;
+            while (excess > 0) {
+                ConcurrentTinyLfuCache<SearchCacheKey, CachedSearchResponse> victim = null;
+                long victimSurplus = 0;
+                ConcurrentTinyLfuCache<SearchCacheKey, CachedSearchResponse> largest = null;
+                for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+                    ConcurrentTinyLfuCache<SearchCacheKey, CachedSearchResponse> partition = entry.getValue().cache;
+                    long weight = partition.weightedSize();
+                    long surplus = weight - quotas.minimumBytes(entry.getKey(), maxBytes);
+                    if (surplus > victimSurplus) {
+                        victim = partition;
+                        victimSurplus = surplus;
+                    }
+                    if (largest == null || weight > largest.weightedSize()) {
+                        largest = partition;
+                    }
+                }
+                // minimum shares oversubscribe the budget: fall back to the largest partition
+                long freed = victim != null
+                    ? victim.evict(Math.min(excess, victimSurplus))
+                    : largest != null ? largest.evict(excess) : 0;
+                if (freed == 0) {
+                    return;
+                }
+                excess -= freed;
+            }
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * A tenant's entries and how its lookups went
+     */
+    private static final class Partition {
+        final ConcurrentTinyLfuCache<SearchCacheKey, CachedSearchResponse> cache;
+        final LookupCounters lookups = new LookupCounters();
+
+        Partition(ConcurrentTinyLfuCache<SearchCacheKey, CachedSearchResponse> cache) {
+            this.cache = cache;
+        }
+    }
+
+    /**
+     * Lookups by the freshness of the entry found
+     */
+    private static final class LookupCounters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder staleHits = new LongAdder();
+        final LongAdder invalidatedHits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+
+        /**
+         * @param freshness of the entry found, or null if there was none
+         */
+        void record(Freshness freshness) {
+            if (freshness == null) {
+                misses.increment();
+                return;
+            }
+            switch (freshness) {
+                case FRESH -> hits.increment();
+                case STALE -> staleHits.increment();
+                case INVALIDATED -> invalidatedHits.increment();
+            }
+        }
+
+        void describe(CacheStats stats) {
+            long hitCount = hits.sum();
+            long lookups = hitCount + staleHits.sum() + invalidatedHits.sum() + misses.sum();
+            stats.setHitCount(hitCount);
+            stats.setMissCount(misses.sum());
+            stats.setStaleHitCount(staleHits.sum());
+            stats.setInvalidatedHitCount(invalidatedHits.sum());
+            stats.setHitRate(lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ai.deeprunner.searcher.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size region of direct memory carved into equal blocks.
+ * A value occupies as many blocks as its length needs, in any order, so the arena never
+ * fragments. Block bookkeeping is synchronized; reads and writes use absolute positions on the
+ * shared buffer and need no locking, as long as callers never touch blocks they have freed.
+ */
+final class OffHeapArena {
+
+    private final ByteBuffer memory;
+    private final int blockSize;
+    private final int[] freeBlocks;
+    private int freeCount;
+
+    OffHeapArena(long capacityBytes, int blockSize) {
+        if (blockSize <= 0) throw new IllegalArgumentException("blockSize must be > 0");
+        int blockCount = (int) Math.min(Integer.MAX_VALUE / blockSize, Math.max(1, capacityBytes / blockSize));
+        this.memory = ByteBuffer.allocateDirect(blockCount * blockSize);
+        this.blockSize = blockSize;
+        this.freeBlocks = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            freeBlocks[i] = blockCount - 1 - i;
+        }
+        this.freeCount = blockCount;
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    long capacity() {
+        return (long) freeBlocks.length * blockSize;
+    }
+
+    synchronized long freeBytes() {
+        return (long) freeCount * blockSize;
+    }
+
+    int blocksFor(int length) {
+        return Math.max(1, (length + blockSize - 1) / blockSize);
+    }
+
+    /**
+     * @return blocks able to hold the given number of bytes, or null if not enough are free
+     */
+    synchronized int[] allocate(int length) {
+        int needed = blocksFor(length);
+        if (needed > freeCount) {
+            return null;
+        }
+        int[] blocks = new int[needed];
+        for (int i = 0; i < needed; i++) {
+            blocks[i] = freeBlocks[--freeCount];
+        }
+        return blocks;
+    }
+
+    synchronized void free(int[] blocks) {
+        for (int block : blocks) {
+            freeBlocks[freeCount++] = block;
+        }
+    }
+
+    void write(int[] blocks, byte[] data) {
+        int offset = 0;
+        for (int block : blocks) {
+            int chunk = Math.min(blockSize, data.length - offset);
+            if (chunk <= 0) {
+                break;
+            }
+            memory.put(block * blockSize, data, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    byte[] read(int[] blocks, int length) {
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (int block : blocks) {
+            int chunk = Math.min(blockSize, length - offset);
+            if (chunk <= 0) {
+                break;
+            }
+            memory.get(block * blockSize, data, offset, chunk);
+            offset += chunk;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,84 @@
+package ai.deeprunner.searcher.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle to a document source stored in an {@link OffHeapArena}, with the version it was read at.
+ * Readers pin the handle while copying the bytes out; once the cache drops the handle, its blocks
+ * return to the arena when the last reader unpins, so a block is never reused under a reader.
+ */
+final class OffHeapDocument {
+    private static final int RELEASED = -1;
+
+    private final int[] blocks;
+    private final int length;
+    private final long seqNo;
+    private final long primaryTerm;
+    private final long version;
+    private final long scopeEpoch;
+    private final AtomicInteger pins = new AtomicInteger();
+    private volatile boolean dropped;
+
+    OffHeapDocument(int[] blocks, int length, long seqNo, long primaryTerm, long version, long scopeEpoch) {
+        this.blocks = blocks;
+        this.length = length;
+        this.seqNo = seqNo;
+        this.primaryTerm = primaryTerm;
+        this.version = version;
+        this.scopeEpoch = scopeEpoch;
+    }
+
+    int[] blocks() {
+        return blocks;
+    }
+
+    int length() {
+        return length;
+    }
+
+    long version() {
+        return version;
+    }
+
+    long scopeEpoch() {
+        return scopeEpoch;
+    }
+
+    /**
+     * @return true if this copy predates the write identified by the primary term and sequence number
+     */
+    boolean isOlderThan(long otherPrimaryTerm, long otherSeqNo) {
+        return primaryTerm < otherPrimaryTerm || (primaryTerm == otherPrimaryTerm && seqNo < otherSeqNo);
+    }
+
+    /**
+     * @return false if the blocks have already been released and must not be read
+     */
+    boolean pin() {
+        while (true) {
+            int current = pins.get();
+            if (current == RELEASED) {
+                return false;
+            }
+            if (pins.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void unpin(OffHeapArena arena) {
+        if (pins.decrementAndGet() == 0 && dropped && pins.compareAndSet(0, RELEASED)) {
+            arena.free(blocks);
+        }
+    }
+
+    /**
+     * Called once the cache no longer holds this handle
+     */
+    void drop(OffHeapArena arena) {
+        dropped = true;
+        if (pins.compareAndSet(0, RELEASED)) {
+            arena.free(blocks);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ai.deeprunner.searcher.cache;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hits of an Elasticsearch search response, read from its raw bytes. Hit metadata is parsed, but
+ * each _source, the fields returned from doc values and the sort values are only skipped over and
+ * kept as slices of the response body, to be copied into a {@link SerializedSearchResponse} as is rather than
+ * parsed into maps and serialized again.
+ */
+public final class RawSearchHits {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final byte[] body;
+    private final List<Hit> hits;
+    private final Long total;
+    private final boolean totalExact;
+    private final Boolean terminatedEarly;
+    private final long sourceBytes;
+
+    private RawSearchHits(byte[] body, List<Hit> hits, Long total, boolean totalExact, Boolean terminatedEarly,
+                          long sourceBytes) {
+        this.body = body;
+        this.hits = hits;
+        this.total = total;
+        this.totalExact = totalExact;
+        this.terminatedEarly = terminatedEarly;
+        this.sourceBytes = sourceBytes;
+    }
+
+    /**
+     * A hit, with its source, fields and sort values as offsets and lengths into the response body;
+     * a length of 0 means none were returned
+     */
+    record Hit(String id, Double score, String index, int sourceOffset, int sourceLength,
+               int fieldsOffset, int fieldsLength, int sortOffset, int sortLength) {
+    }
+
+    /**
+     * Read a search response body to its end
+     *
+     * @throws IOException if the body cannot be read or is not a search response
+     */
+    public static RawSearchHits parse(InputStream content) throws IOException {
+        byte[] body = content.readAllBytes();
+        List<Hit> hits = new ArrayList<>();
+        Long total = null;
+        boolean totalExact = false;
+        Boolean terminatedEarly = null;
+        long sourceBytes = 0;
+        try (JsonParser parser = JSON.createParser(body)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("terminated_early") && value.isBoolean()) {
+                    terminatedEarly = parser.getBooleanValue();
+                    continue;
+                }
+                if (!field.equals("hits") || value != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String hitsField = parser.currentName();
+                    JsonToken hitsValue = parser.nextToken();
+                    if (hitsField.equals("total") && hitsValue == JsonToken.VALUE_NUMBER_INT) {
+                        // rest_total_hits_as_int
+                        total = parser.getLongValue();
+                        totalExact = true;
+                    } else if (hitsField.equals("total") && hitsValue == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String totalField = parser.currentName();
+                            parser.nextToken();
+                            if (totalField.equals("value")) {
+                                total = parser.getLongValue();
+                            } else if (totalField.equals("relation")) {
+                                totalExact = "eq".equals(parser.getValueAsString());
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    } else if (hitsField.equals("hits") && hitsValue == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            Hit hit = readHit(parser);
+                            sourceBytes += hit.sourceLength() + hit.fieldsLength();
+                            hits.add(hit);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return new RawSearchHits(body, hits, total, totalExact, terminatedEarly, sourceBytes);
+    }
+
+    private static Hit readHit(JsonParser parser) throws IOException {
+        String id = null;
+        Double score = null;
+        String index = null;
+        int sourceOffset = 0;
+        int sourceLength = 0;
+        int fieldsOffset = 0;
+        int fieldsLength = 0;
+        int sortOffset = 0;
+        int sortLength = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "_id" -> id = parser.getValueAsString();
+                case "_index" -> index = parser.getValueAsString();
+                case "_score" -> score = value == JsonToken.VALUE_NULL ? null : parser.getDoubleValue();
+                case "_source" -> {
+                    expect(value, JsonToken.START_OBJECT);
+                    sourceOffset = (int) parser.currentTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    sourceLength = (int) parser.currentLocation().getByteOffset() - sourceOffset;
+                }
+                case "fields" -> {
+                    expect(value, JsonToken.START_OBJECT);
+                    fieldsOffset = (int) parser.currentTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    fieldsLength = (int) parser.currentLocation().getByteOffset() - fieldsOffset;
+                }
+                case "sort" -> {
+                    expect(value, JsonToken.START_ARRAY);
+                    sortOffset = (int) parser.currentTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    sortLength = (int) parser.currentLocation().getByteOffset() - sortOffset;
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return new Hit(id, score, index, sourceOffset, sourceLength, fieldsOffset, fieldsLength, sortOffset,
+            sortLength);
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected search response: " + actual + " instead of " + expected);
+        }
+    }
+
+    List<Hit> hits() {
+        return hits;
+    }
+
+    byte[] body() {
+        return body;
+    }
+
+    /**
+     * @return number of hits returned
+     */
+    public int size() {
+        return hits.size();
+    }
+
+    /**
+     * @return total hits matching the search, or a lower bound if not exact; null if they were not counted
+     */
+    public Long total() {
+        return total;
+    }
+
+    boolean totalExact() {
+        return totalExact;
+    }
+
+    Boolean terminatedEarly() {
+        return terminatedEarly;
+    }
+
+    /**
+     * @return combined size of the hits' sources and fields, in bytes
+     */
+    long sourceBytes() {
+        return sourceBytes;
+    }
+}
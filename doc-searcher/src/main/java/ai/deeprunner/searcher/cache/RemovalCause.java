@@ -0,0 +1,17 @@
+package ai.deeprunner.searcher.cache;
+
+/**
+ * Reason an entry left the cache (or was never admitted).
+ */
+public enum RemovalCause {
+    /** Removed by invalidation or clear */
+    EXPLICIT,
+    /** Value overwritten by a put for the same key */
+    REPLACED,
+    /** Time-to-live elapsed */
+    EXPIRED,
+    /** Evicted by the size policy to stay within the weight budget */
+    SIZE,
+    /** Rejected on insert because the entry alone exceeds the allowed weight */
+    TOO_LARGE
+}
@@ -0,0 +1,127 @@
+package ai.deeprunner.searcher.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter that grows as elements are added.
+ * Elements go into the newest stage; when it reaches its capacity a stage twice as large, with
+ * half the false-positive rate, is added, so the overall rate stays below twice the initial one
+ * however many elements arrive. Lookups are lock-free; adds are serialized.
+ */
+final class ScalableBloomFilter {
+
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    private volatile Stage[] stages;
+    private long count;
+
+    ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        this.stages = new Stage[]{new Stage(Math.max(64, initialCapacity), falsePositiveRate)};
+    }
+
+    /**
+     * @return false if the element was definitely never added
+     */
+    boolean mightContain(String element) {
+        long hash = hash(element);
+        for (Stage stage : stages) {
+            if (stage.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void add(String element) {
+        long hash = hash(element);
+        Stage[] current = stages;
+        Stage last = current[current.length - 1];
+        if (last.count >= last.capacity) {
+            Stage[] grown = new Stage[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            last = new Stage(last.capacity * 2, last.falsePositiveRate / 2);
+            grown[current.length] = last;
+            stages = grown;
+        }
+        last.add(hash);
+        count++;
+    }
+
+    /**
+     * @return number of elements added, counting repeats
+     */
+    synchronized long count() {
+        return count;
+    }
+
+    /**
+     * @return approximate heap used by the bit arrays, in bytes
+     */
+    long sizeInBytes() {
+        long bytes = 0;
+        for (Stage stage : stages) {
+            bytes += (long) stage.bits.length() * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    private static long hash(String element) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < element.length(); i++) {
+            h = (h ^ element.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Stage {
+        final long capacity;
+        final double falsePositiveRate;
+        final AtomicLongArray bits;
+        final long bitCount;
+        final int hashCount;
+        long count;
+
+        Stage(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / LN2_SQUARED);
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = (long) words * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        boolean mightContain(long hash) {
+            // double hashing: the i-th probe is h1 + i * h2
+            long h1 = hash;
+            long h2 = (hash >>> 32) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(long hash) {
+            long h1 = hash;
+            long h2 = (hash >>> 32) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current = bits.get(word);
+                while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    current = bits.get(word);
+                }
+            }
+            count++;
+        }
+    }
+}
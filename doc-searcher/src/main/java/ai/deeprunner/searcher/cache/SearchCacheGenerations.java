@@ -0,0 +1,73 @@
+package ai.deeprunner.searcher.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per tenant and document type generation counters for search cache invalidation.
+ * <p>
+ * Every write bumps the generation; cached responses tagged with an older generation are
+ * rejected. Writes only become searchable after the next Elasticsearch refresh, so a generation
+ * stays "unsettled" for the configured settle period after a write: searches started during that
+ * period may not see the write yet and must not be cached. Settled generations are odd and
+ * unsettled ones even, so a single number captures both facts.
+ */
+@Component
+public class SearchCacheGenerations {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, AtomicReference<State>>> generations =
+        new ConcurrentHashMap<>();
+    private final long settleNanos;
+
+    public SearchCacheGenerations(@Value("${search.cache.invalidation.settle-ms:1000}") long settleMs) {
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMs);
+    }
+
+    /**
+     * @return current generation for the tenant and document type
+     */
+    public long current(String tenantId, String documentType) {
+        ConcurrentMap<String, AtomicReference<State>> byType = generations.get(tenantId);
+        if (byType == null) {
+            return 1;
+        }
+        AtomicReference<State> state = byType.get(documentType);
+        return state == null ? 1 : state.get().generation(System.nanoTime(), settleNanos);
+    }
+
+    /**
+     * Record a write for the tenant and document type, invalidating every cached response for it.
+     */
+    public void bump(String tenantId, String documentType) {
+        long now = System.nanoTime();
+        generations.computeIfAbsent(tenantId, t -> new ConcurrentHashMap<>())
+            .computeIfAbsent(documentType, d -> new AtomicReference<>(new State(0, now - settleNanos)))
+            .updateAndGet(s -> new State(s.writes + 1, now));
+    }
+
+    /**
+     * @return true if responses computed under this generation may be cached
+     */
+    public static boolean isSettled(long generation) {
+        return (generation & 1) == 1;
+    }
+
+    private static final class State {
+        final long writes;
+        final long lastWriteNanos;
+
+        State(long writes, long lastWriteNanos) {
+            this.writes = writes;
+            this.lastWriteNanos = lastWriteNanos;
+        }
+
+        long generation(long now, long settleNanos) {
+            return 2 * writes + (now - lastWriteNanos >= settleNanos ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.indexer.event.DocumentChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Invalidates cached search responses, and cached copies of the written document,
+ * when the indexer applies a write. The document is also recorded as existing for by-ID lookups.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SearchCacheInvalidator {
+
+    private final SearchCacheGenerations generations;
+    private final DocumentNearCache documentCache;
+    private final DocumentExistenceFilter existenceFilter;
+
+    @EventListener
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        generations.bump(event.getTenantId(), event.getDocumentType());
+        DocumentKey documentKey = new DocumentKey(event.getTenantId(), event.getDocumentType(), event.getDocumentId());
+        documentCache.invalidate(documentKey, event.getSeqNo(), event.getPrimaryTerm());
+        existenceFilter.recordWrite(documentKey);
+        log.debug("Invalidated search cache for tenant: {}, docType: {}", event.getTenantId(), event.getDocumentType());
+    }
+}
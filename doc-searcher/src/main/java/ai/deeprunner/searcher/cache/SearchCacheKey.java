@@ -0,0 +1,411 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.SearchFilter;
+import ai.deeprunner.searcher.model.SearchRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Canonical identity of a search request in the search cache.
+ * <p>
+ * Requests that differ only in query whitespace, field order, filter order, sort direction
+ * spelling, projected field order, the order of a terms filter's values or a range's operators,
+ * or now-relative date math left unrounded rather than rounded to the minute map to equal keys.
+ * Anything Elasticsearch would see differently keeps keys apart: query text keeps its case, and
+ * filter values are compared as the literals sent, so a term of 1 matches a term of "1" but not
+ * one of 1.0. A 64-bit hash of the
+ * canonical form is computed once, without building an intermediate string; equality compares
+ * that hash first and the canonical components second, so a hash collision can never return
+ * another request's results.
+ */
+public final class SearchCacheKey {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String tenantId;
+    private final String documentType;
+    private final String query;
+    private final List<String> fields;
+    private final List<String> sort;
+    private final Map<String, Object> filters;
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final List<String> docValueFields;
+    private final String totalHits;
+    private final int terminateAfter;
+    private final int page;
+    private final int size;
+    private final long hash;
+
+    private SearchCacheKey(String tenantId, String documentType, String query, List<String> fields,
+                           List<String> sort, Map<String, Object> filters, List<String> includes,
+                           List<String> excludes, List<String> docValueFields, String totalHits,
+                           int terminateAfter, int page, int size) {
+        this.tenantId = tenantId;
+        this.documentType = documentType;
+        this.query = query;
+        this.fields = fields;
+        this.sort = sort;
+        this.filters = filters;
+        this.includes = includes;
+        this.excludes = excludes;
+        this.docValueFields = docValueFields;
+        this.totalHits = totalHits;
+        this.terminateAfter = terminateAfter;
+        this.page = page;
+        this.size = size;
+        this.hash = computeHash();
+    }
+
+    /**
+     * Build the canonical key for a search request
+     *
+     * @param tenantId tenant ID
+     * @param documentType effective document type (after defaulting)
+     * @param request search request
+     * @return canonical cache key
+     */
+    public static SearchCacheKey of(String tenantId, String documentType, SearchRequest request) {
+        return new SearchCacheKey(
+            tenantId == null ? "" : tenantId,
+            documentType == null ? "" : documentType,
+            normalizeQuery(request.getQuery()),
+            canonicalFields(request.getFields()),
+            canonicalSort(request.getSort()),
+            canonicalFilters(request.getFilters()),
+            canonicalFields(request.getIncludes()),
+            canonicalFields(request.getExcludes()),
+            canonicalFields(request.getDocValueFields()),
+            canonicalTotalHits(request.getTotalHits()),
+            request.getTerminateAfter() == null ? -1 : request.getTerminateAfter(),
+            request.getPage() == null ? -1 : request.getPage(),
+            request.getSize() == null ? -1 : request.getSize());
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getDocumentType() {
+        return documentType;
+    }
+
+    /**
+     * @return the 64-bit hash of the canonical form
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    String getQuery() {
+        return query;
+    }
+
+    List<String> getFields() {
+        return fields;
+    }
+
+    List<String> getSort() {
+        return sort;
+    }
+
+    Map<String, Object> getFilters() {
+        return filters;
+    }
+
+    /**
+     * @return includes, excludes and doc value fields, in that order
+     */
+    List<List<String>> getProjection() {
+        return List.of(includes, excludes, docValueFields);
+    }
+
+    /**
+     * Rebuild a search request with this key's canonical form. Every request mapping to this key
+     * is answered by the same cached response, so the rebuilt request can stand in for them,
+     * e.g. to re-run a search when warming the cache.
+     */
+    public SearchRequest toRequest() {
+        SearchRequest request = new SearchRequest();
+        request.setQuery(query.isEmpty() ? null : query);
+        request.setDocumentType(documentType.isEmpty() ? null : documentType);
+        request.setFields(fields.isEmpty() ? null : new ArrayList<>(fields));
+        request.setSort(sort.isEmpty() ? null : new ArrayList<>(sort));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> plainFilters = filters.isEmpty() ? null : (Map<String, Object>) plainValue(filters);
+        request.setFilters(plainFilters);
+        request.setIncludes(includes.isEmpty() ? null : new ArrayList<>(includes));
+        request.setExcludes(excludes.isEmpty() ? null : new ArrayList<>(excludes));
+        request.setDocValueFields(docValueFields.isEmpty() ? null : new ArrayList<>(docValueFields));
+        request.setTotalHits(totalHits.isEmpty() ? null : totalHits);
+        request.setTerminateAfter(terminateAfter < 0 ? null : terminateAfter);
+        request.setPage(page < 0 ? null : page);
+        request.setSize(size < 0 ? null : size);
+        return request;
+    }
+
+    /**
+     * Copy canonical filters into the mutable maps and lists a request carries
+     */
+    private static Object plainValue(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                result.put(String.valueOf(entry.getKey()), plainValue(entry.getValue()));
+            }
+            return result;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> result = new ArrayList<>(list.size());
+            for (Object element : list) {
+                result.add(plainValue(element));
+            }
+            return result;
+        }
+        return value;
+    }
+
+    /**
+     * Trim the query and collapse whitespace runs; returns the input when already canonical.
+     * Case is kept, since it is significant to case-sensitive fields and query syntax.
+     */
+    static String normalizeQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        if (isNormalized(query)) {
+            return query;
+        }
+        StringBuilder sb = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNormalized(String query) {
+        char previous = ' ';
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c) && (c != ' ' || previous == ' ')) {
+                return false;
+            }
+            previous = c;
+        }
+        return previous != ' ' || query.isEmpty();
+    }
+
+    /**
+     * Lower-case the mode and drop leading zeros from a count; unrecognized modes are kept as is
+     * and rejected when the search is built
+     */
+    private static String canonicalTotalHits(String totalHits) {
+        if (totalHits == null || totalHits.isBlank()) {
+            return "";
+        }
+        String mode = totalHits.trim().toLowerCase();
+        try {
+            return Integer.toString(Integer.parseInt(mode));
+        } catch (NumberFormatException e) {
+            return mode;
+        }
+    }
+
+    private static List<String> canonicalFields(List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            if (field != null && !field.isBlank()) {
+                String trimmed = field.trim();
+                if (!result.contains(trimmed)) {
+                    result.add(trimmed);
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Sort priority is significant, so order is kept; only the direction spelling is normalized.
+     */
+    private static List<String> canonicalSort(List<String> sort) {
+        if (sort == null || sort.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(sort.size());
+        for (String entry : sort) {
+            if (entry == null || entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split(":");
+            String order = parts.length > 1 && "desc".equalsIgnoreCase(parts[1].trim()) ? "desc" : "asc";
+            result.add(parts[0].trim() + ":" + order);
+        }
+        return result;
+    }
+
+    /**
+     * Each filter in the form its typed filter gives it, then normalized as a value
+     *
+     * @throws IllegalArgumentException if a filter is not one of the filter forms
+     */
+    private static Map<String, Object> canonicalFilters(Map<String, Object> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> result = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : filters.entrySet()) {
+            SearchFilter filter = SearchFilter.of(entry.getKey(), entry.getValue());
+            result.put(entry.getKey(), canonicalValue(filter.canonicalValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Normalize a filter value so values serialized to the same JSON compare equal: small
+     * integers become longs, collections and maps become ordered copies. Numbers keep their
+     * scale, since 1 and 1.0 are different literals to a keyword field.
+     */
+    static Object canonicalValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Number) {
+            return value;
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> result = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                result.put(String.valueOf(entry.getKey()), canonicalValue(entry.getValue()));
+            }
+            return result;
+        }
+        if (value instanceof Collection<?> collection) {
+            List<Object> result = new ArrayList<>(collection.size());
+            for (Object element : collection) {
+                result.add(canonicalValue(element));
+            }
+            return result;
+        }
+        return value.toString();
+    }
+
+    private long computeHash() {
+        long h = FNV_OFFSET;
+        h = hashString(h, tenantId);
+        h = hashString(h, documentType);
+        h = hashString(h, query);
+        for (String field : fields) {
+            h = hashString(h, field);
+        }
+        h = mix(h, 0x1f);
+        for (String s : sort) {
+            h = hashString(h, s);
+        }
+        h = mix(h, 0x1e);
+        h = hashValue(h, filters);
+        for (List<String> projected : List.of(includes, excludes, docValueFields)) {
+            for (String field : projected) {
+                h = hashString(h, field);
+            }
+            h = mix(h, 0x1d);
+        }
+        h = hashString(h, totalHits);
+        h = mix(h, terminateAfter);
+        h = mix(h, page);
+        h = mix(h, size);
+        // final avalanche so the low bits used by hash tables depend on every input
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hashValue(long h, Object value) {
+        if (value == null) {
+            return mix(h, 0);
+        }
+        if (value instanceof String s) {
+            return hashString(h, s);
+        }
+        if (value instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                h = hashValue(h, entry.getKey());
+                h = hashValue(h, entry.getValue());
+            }
+            return mix(h, map.size());
+        }
+        if (value instanceof List<?> list) {
+            for (Object element : list) {
+                h = hashValue(h, element);
+            }
+            return mix(h, list.size());
+        }
+        return mix(h, value.hashCode());
+    }
+
+    private static long hashString(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        // length terminator keeps ("ab","c") distinct from ("a","bc")
+        return mix(h, s.length());
+    }
+
+    private static long mix(long h, long value) {
+        return (h ^ value) * FNV_PRIME;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SearchCacheKey other)) return false;
+        return hash == other.hash
+            && page == other.page
+            && size == other.size
+            && terminateAfter == other.terminateAfter
+            && totalHits.equals(other.totalHits)
+            && tenantId.equals(other.tenantId)
+            && documentType.equals(other.documentType)
+            && query.equals(other.query)
+            && fields.equals(other.fields)
+            && sort.equals(other.sort)
+            && filters.equals(other.filters)
+            && includes.equals(other.includes)
+            && excludes.equals(other.excludes)
+            && docValueFields.equals(other.docValueFields);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return tenantId + "/" + documentType + "#" + Long.toHexString(hash);
+    }
+}
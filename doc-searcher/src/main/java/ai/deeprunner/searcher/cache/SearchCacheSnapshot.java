@@ -0,0 +1,163 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.SearchRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The hottest search cache entries at a point in time, persisted so a restarted searcher can warm
+ * its cache. Each entry keeps the canonical request, so it can be re-run, and optionally the
+ * response rendered as JSON.
+ * <p>
+ * File layout: magic, version, capture time, entry count, then per entry the tenant, document type,
+ * request JSON, remaining TTL and an optional response body. Files are replaced atomically, so a
+ * crash while writing leaves the previous snapshot intact.
+ */
+public final class SearchCacheSnapshot {
+
+    private static final int MAGIC = 0x53434e50;
+    private static final int VERSION = 1;
+
+    private final long capturedAtMillis;
+    private final List<Entry> entries;
+
+    /**
+     * One captured search
+     */
+    public static final class Entry {
+        private final SearchCacheKey key;
+        private final SerializedSearchResponse response;
+        private final long remainingTtlMillis;
+
+        Entry(SearchCacheKey key, SerializedSearchResponse response, long remainingTtlMillis) {
+            this.key = key;
+            this.response = response;
+            this.remainingTtlMillis = remainingTtlMillis;
+        }
+
+        public SearchCacheKey getKey() {
+            return key;
+        }
+
+        /**
+         * @return the captured response, or null if only the request was captured
+         */
+        public SerializedSearchResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * @return time the response had left until its hard TTL when captured
+         */
+        public long getRemainingTtlMillis() {
+            return remainingTtlMillis;
+        }
+    }
+
+    SearchCacheSnapshot(long capturedAtMillis, List<Entry> entries) {
+        this.capturedAtMillis = capturedAtMillis;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public long getCapturedAtMillis() {
+        return capturedAtMillis;
+    }
+
+    /**
+     * @return captured entries, most frequently used first
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Write the snapshot to a temporary file next to the target, then move it into place
+     */
+    public void writeTo(Path path, ObjectMapper objectMapper) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(capturedAtMillis);
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    out.writeUTF(entry.key.getTenantId());
+                    out.writeUTF(entry.key.getDocumentType());
+                    writeBytes(out, objectMapper.writeValueAsBytes(entry.key.toRequest()));
+                    out.writeLong(entry.remainingTtlMillis);
+                    out.writeBoolean(entry.response != null);
+                    if (entry.response != null) {
+                        out.writeBoolean(entry.response.isGzipped());
+                        writeBytes(out, entry.response.getBody());
+                    }
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return the snapshot stored at the path, or null if there is none
+     * @throws IOException if the file cannot be read or is not a snapshot of this version
+     */
+    public static SearchCacheSnapshot readFrom(Path path, ObjectMapper objectMapper) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a search cache snapshot of version " + VERSION + ": " + path);
+            }
+            long capturedAt = in.readLong();
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(Math.min(count, 1 << 16));
+            for (int i = 0; i < count; i++) {
+                String tenantId = in.readUTF();
+                String documentType = in.readUTF();
+                SearchRequest request = objectMapper.readValue(readBytes(in), SearchRequest.class);
+                long remainingTtlMillis = in.readLong();
+                SerializedSearchResponse response = null;
+                if (in.readBoolean()) {
+                    boolean gzipped = in.readBoolean();
+                    response = new SerializedSearchResponse(readBytes(in), gzipped);
+                }
+                entries.add(new Entry(SearchCacheKey.of(tenantId, documentType, request), response,
+                    remainingTtlMillis));
+            }
+            return new SearchCacheSnapshot(capturedAt, entries);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt search cache snapshot");
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new IOException("Truncated search cache snapshot");
+        }
+        return bytes;
+    }
+}
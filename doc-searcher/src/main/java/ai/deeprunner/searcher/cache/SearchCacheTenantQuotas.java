@@ -0,0 +1,62 @@
+package ai.deeprunner.searcher.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-tenant shares of the search cache budget, as fractions of search.cache.max-bytes.
+ * A tenant's partition never grows past its maximum share, and entries within its minimum share
+ * are never evicted to make room for other tenants. Tenants without an override use the defaults.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "search.cache.tenant")
+public class SearchCacheTenantQuotas {
+
+    /**
+     * Share of the budget protected from other tenants' pressure
+     */
+    private double minShare = 0.05;
+
+    /**
+     * Largest share of the budget a single tenant may occupy
+     */
+    private double maxShare = 0.5;
+
+    /**
+     * Shares for specific tenants, keyed by tenant ID
+     */
+    private Map<String, Quota> overrides = new HashMap<>();
+
+    @Data
+    public static class Quota {
+        private Double minShare;
+        private Double maxShare;
+    }
+
+    /**
+     * @return bytes of the budget guaranteed to the tenant
+     */
+    public long minimumBytes(String tenantId, long budget) {
+        Quota quota = overrides.get(tenantId);
+        double share = quota != null && quota.getMinShare() != null ? quota.getMinShare() : minShare;
+        return Math.min(bytes(share, budget), maximumBytes(tenantId, budget));
+    }
+
+    /**
+     * @return most bytes of the budget the tenant may occupy, at least one byte
+     */
+    public long maximumBytes(String tenantId, long budget) {
+        Quota quota = overrides.get(tenantId);
+        double share = quota != null && quota.getMaxShare() != null ? quota.getMaxShare() : maxShare;
+        return Math.max(1, bytes(share, budget));
+    }
+
+    private static long bytes(double share, long budget) {
+        return (long) (budget * Math.min(1.0, Math.max(0.0, share)));
+    }
+}
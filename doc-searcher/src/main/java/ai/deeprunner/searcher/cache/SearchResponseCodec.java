@@ -0,0 +1,109 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.SearchResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Renders search responses to the JSON bytes kept by the serialized cache mode.
+ * Uses the application's ObjectMapper so cached bytes match what the controllers would write.
+ * Bodies below the compression threshold are stored uncompressed, where gzip saves little.
+ * Responses can also be rendered straight from Elasticsearch's raw hits: the envelope is written
+ * with the same ObjectMapper, and each hit's source, fields and sort values are copied in as raw
+ * JSON, without being parsed.
+ */
+@Component
+public class SearchResponseCodec {
+
+    private final ObjectMapper objectMapper;
+    private final boolean gzip;
+    private final int gzipMinBytes;
+
+    public SearchResponseCodec(ObjectMapper objectMapper,
+                               @Value("${search.cache.serialized.gzip:false}") boolean gzip,
+                               @Value("${search.cache.serialized.gzip-min-bytes:1024}") int gzipMinBytes) {
+        this.objectMapper = objectMapper;
+        this.gzip = gzip;
+        this.gzipMinBytes = gzipMinBytes;
+    }
+
+    public SerializedSearchResponse encode(SearchResponse response) throws IOException {
+        return compress(objectMapper.writeValueAsBytes(response));
+    }
+
+    /**
+     * Render a page of raw hits as a search response, without parsing their sources
+     *
+     * @param withSort whether to render each hit's sort values, for searches with an explicit sort
+     */
+    public SerializedSearchResponse encode(RawSearchHits hits, int page, int size, long tookMs, boolean withSort)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8,
+            hits.sourceBytes() + 128L * hits.size() + 128));
+        byte[] body = hits.body();
+        Long total = hits.total();
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("results");
+            for (RawSearchHits.Hit hit : hits.hits()) {
+                json.writeStartObject();
+                json.writeStringField("documentId", hit.id());
+                json.writeObjectField("score", hit.score());
+                writeSlice(json, "source", body, hit.sourceOffset(), hit.sourceLength());
+                json.writeStringField("index", hit.index());
+                writeSlice(json, "fields", body, hit.fieldsOffset(), hit.fieldsLength());
+                writeSlice(json, "sort", body, hit.sortOffset(), withSort ? hit.sortLength() : 0);
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeObjectField("total", total);
+            json.writeNumberField("page", page);
+            json.writeNumberField("size", size);
+            json.writeObjectField("totalPages", total == null ? null : (int) Math.ceil((double) total / size));
+            json.writeNumberField("tookMs", tookMs);
+            json.writeBooleanField("totalExact", hits.totalExact());
+            if (hits.terminatedEarly() != null) {
+                json.writeBooleanField("terminatedEarly", hits.terminatedEarly());
+            }
+            json.writeEndObject();
+        }
+        return compress(out.toByteArray());
+    }
+
+    /**
+     * Copy a JSON value from the Elasticsearch response as is; an empty slice is an absent value,
+     * left out like the response model's other optional fields
+     */
+    private static void writeSlice(JsonGenerator json, String field, byte[] body, int offset, int length)
+            throws IOException {
+        if (length > 0) {
+            json.writeFieldName(field);
+            json.writeRawValue(new String(body, offset, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    private SerializedSearchResponse compress(byte[] json) throws IOException {
+        if (!gzip || json.length < gzipMinBytes) {
+            return new SerializedSearchResponse(json, false);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(json);
+        }
+        return new SerializedSearchResponse(out.toByteArray(), true);
+    }
+
+    public SearchResponse decode(SerializedSearchResponse serialized) throws IOException {
+        try (InputStream in = serialized.openJson()) {
+            return objectMapper.readValue(in, SearchResponse.class);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.SearchResponse;
+import ai.deeprunner.searcher.model.SearchResult;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Estimates the retained heap size of a cached search response.
+ * Sizes assume a 64-bit JVM with compressed oops and compact strings; the goal is a stable,
+ * cheap approximation for budgeting, not an exact measurement.
+ */
+final class SearchResponseWeigher {
+
+    private static final int OBJECT_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int BOXED = 16;
+    private static final int MAP_OVERHEAD = 64;
+    private static final int MAP_ENTRY = 40;
+    private static final int LIST_OVERHEAD = 40;
+    private static final int ARRAY_OVERHEAD = 16;
+    private static final int SEARCH_RESULT = 32;
+    private static final int SEARCH_RESPONSE = 48;
+    private static final int CACHE_KEY = 56;
+    private static final int MAX_DEPTH = 32;
+
+    private SearchResponseWeigher() {
+    }
+
+    static int weigh(SearchCacheKey key, CachedSearchResponse entry) {
+        return entry.getSerialized() != null
+            ? weigh(key, entry.getSerialized())
+            : weigh(key, entry.getResponse());
+    }
+
+    static int weigh(SearchCacheKey key, SerializedSearchResponse serialized) {
+        long size = keySize(key) + OBJECT_HEADER + align(ARRAY_OVERHEAD + serialized.getBody().length);
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    static int weigh(SearchCacheKey key, SearchResponse response) {
+        long size = SEARCH_RESPONSE + keySize(key);
+        if (response.getResults() != null) {
+            size += LIST_OVERHEAD + (long) REFERENCE * response.getResults().size();
+            for (SearchResult result : response.getResults()) {
+                size += SEARCH_RESULT
+                    + sizeOf(result.getDocumentId(), 0)
+                    + sizeOf(result.getScore(), 0)
+                    + sizeOf(result.getIndex(), 0)
+                    + sizeOf(result.getSource(), 0)
+                    + sizeOf(result.getFields(), 0)
+                    + sizeOf(result.getSort(), 0);
+            }
+        }
+        size += 3 * BOXED;
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private static long keySize(SearchCacheKey key) {
+        return CACHE_KEY
+            + sizeOf(key.getQuery(), 0)
+            + sizeOf(key.getFields(), 0)
+            + sizeOf(key.getSort(), 0)
+            + sizeOf(key.getFilters(), 0)
+            + sizeOf(key.getProjection(), 0);
+    }
+
+    private static long sizeOf(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String s) {
+            return align(STRING_OVERHEAD + s.length());
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return BOXED;
+        }
+        if (depth >= MAX_DEPTH) {
+            return OBJECT_HEADER;
+        }
+        if (value instanceof Map<?, ?> map) {
+            long size = MAP_OVERHEAD + (long) MAP_ENTRY * map.size();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += sizeOf(entry.getKey(), depth + 1) + sizeOf(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Collection<?> collection) {
+            long size = LIST_OVERHEAD + (long) REFERENCE * collection.size();
+            for (Object element : collection) {
+                size += sizeOf(element, depth + 1);
+            }
+            return size;
+        }
+        return OBJECT_HEADER + align(value.toString().length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,49 @@
+package ai.deeprunner.searcher.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A search response already rendered as JSON, optionally gzip-compressed, ready to be written
+ * to a client without going through Jackson again.
+ */
+public final class SerializedSearchResponse {
+    private final byte[] body;
+    private final boolean gzipped;
+
+    SerializedSearchResponse(byte[] body, boolean gzipped) {
+        this.body = body;
+        this.gzipped = gzipped;
+    }
+
+    /**
+     * @return the JSON body, gzip-compressed if {@link #isGzipped()}; must not be modified
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public boolean isGzipped() {
+        return gzipped;
+    }
+
+    /**
+     * @return the uncompressed JSON, for clients that do not accept gzip
+     */
+    public byte[] getJson() throws IOException {
+        return gzipped ? gunzip(body) : body;
+    }
+
+    InputStream openJson() throws IOException {
+        InputStream in = new ByteArrayInputStream(body);
+        return gzipped ? new GZIPInputStream(in) : in;
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ai.deeprunner.searcher.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs streamed response bodies, which here are exports, on their own bounded pool instead of
+ * Spring MVC's default async executor. The export service admits at most
+ * search.export.max-concurrent streams, so the pool, sized to hold that many running and as many
+ * again finishing, never has to reject one.
+ */
+@Configuration
+public class ExportStreamingConfig implements WebMvcConfigurer {
+
+    @Value("${search.export.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${search.export.timeout-minutes:60}")
+    private long timeoutMinutes;
+
+    @Bean
+    public ThreadPoolTaskExecutor exportStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("search-export-stream-");
+        executor.setCorePoolSize(maxConcurrent);
+        executor.setMaxPoolSize(maxConcurrent);
+        executor.setQueueCapacity(maxConcurrent);
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(exportStreamExecutor());
+        configurer.setDefaultTimeout(TimeUnit.MINUTES.toMillis(timeoutMinutes));
+    }
+}
@@ -0,0 +1,66 @@
+package ai.deeprunner.searcher.controller;
+
+import ai.deeprunner.core.service.ThreadLocalTenantResolver;
+import ai.deeprunner.searcher.cache.CacheStats;
+import ai.deeprunner.searcher.cache.DocumentExistenceFilter;
+import ai.deeprunner.searcher.cache.DocumentNearCache;
+import ai.deeprunner.searcher.cache.FacetCache;
+import ai.deeprunner.searcher.cache.InMemorySearchCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller exposing search cache metrics
+ */
+@RestController
+@RequestMapping("/api/v1/search-cache")
+@RequiredArgsConstructor
+public class SearchCacheController {
+
+    private final InMemorySearchCache searchCache;
+    private final DocumentNearCache documentCache;
+    private final DocumentExistenceFilter existenceFilter;
+    private final FacetCache facetCache;
+
+    /**
+     * Current cache counters: hits, misses, weight, removals by cause and entry size distribution
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<CacheStats> stats() {
+        return ResponseEntity.ok(searchCache.stats());
+    }
+
+    /**
+     * Document near-cache counters; weights are off-heap bytes
+     */
+    @GetMapping("/documents/stats")
+    public ResponseEntity<CacheStats> documentStats() {
+        return ResponseEntity.ok(documentCache.stats());
+    }
+
+    /**
+     * Facet cache counters
+     */
+    @GetMapping("/facets/stats")
+    public ResponseEntity<CacheStats> facetStats() {
+        return ResponseEntity.ok(facetCache.stats());
+    }
+
+    /**
+     * Missing-document filter and negative cache counters
+     */
+    @GetMapping("/documents/filter/stats")
+    public ResponseEntity<DocumentExistenceFilter.Stats> documentFilterStats() {
+        return ResponseEntity.ok(existenceFilter.stats());
+    }
+
+    /**
+     * Counters for the calling tenant's partition; other tenants' partitions are not visible
+     */
+    @GetMapping("/stats/tenant")
+    public ResponseEntity<CacheStats> tenantStats() {
+        CacheStats stats = searchCache.tenantStats(ThreadLocalTenantResolver.getCurrentTenant());
+        return stats == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(stats);
+    }
+}
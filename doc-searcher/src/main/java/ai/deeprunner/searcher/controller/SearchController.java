@@ -3,26 +3,49 @@ package ai.deeprunner.searcher.controller;
 import ai.deeprunner.core.ratelimit.Ratelimit;
 import ai.deeprunner.core.service.ThreadLocalTenantResolver;
 import ai.deeprunner.searcher.model.SearchRequest;
-import ai.deeprunner.searcher.model.SearchResponse;
+import ai.deeprunner.searcher.cache.SerializedSearchResponse;
+import ai.deeprunner.searcher.model.MultiGetRequest;
+import ai.deeprunner.searcher.model.MultiGetResponse;
+import ai.deeprunner.searcher.service.DocumentExportService;
+import ai.deeprunner.searcher.service.DocumentLookupService;
 import ai.deeprunner.searcher.service.DocumentSearchService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * REST controller for document search operations
+ * With search.async.enabled, searches are answered asynchronously: the request thread is released
+ * while Elasticsearch works, and rate limits and the tenant are applied before it is
  */
 @RestController
 @RequestMapping("/api/v1/documents")
 @RequiredArgsConstructor
 public class SearchController {
+
+    private static final int EXPORT_RETRY_AFTER_SECONDS = 30;
     
     private final DocumentSearchService documentSearchService;
+    private final DocumentExportService documentExportService;
+    private final DocumentLookupService documentLookupService;
+
+    @Value("${search.async.enabled:false}")
+    private boolean asyncEnabled;
     
     /**
      * Search documents by query
@@ -31,16 +54,32 @@ public class SearchController {
      * @param documentType document type filter (optional)
      * @param page page number (default: 0)
      * @param size page size (default: 10)
-     * @return search response with results
+     * @param cursorMode page with a cursor instead of page numbers (default: false)
+     * @param cursor cursor returned with the previous page, in cursor mode
+     * @param includes comma-separated source fields to return (optional, default: all)
+     * @param excludes comma-separated source fields to leave out (optional)
+     * @param docValueFields comma-separated fields to return from doc values (optional)
+     * @param totalHits how to count total hits: exact, none, or a bound to count exactly up to (optional)
+     * @param terminateAfter stop collecting after this many hits per shard (optional)
+     * @param acceptEncoding client's Accept-Encoding, to pass gzip-cached bodies through as is
+     * @return search response with results, or a future of it in async mode
      */
     @Ratelimit(name="search", permitsPerSecond = 3, burstCapacity=25)
     @GetMapping
-    public ResponseEntity<SearchResponse> search(
+    public Object search(
             @RequestParam(name = "query", required = false) String query,
             @RequestParam(name = "fields") String fields,
             @RequestParam(name = "documentType") String documentType,
             @RequestParam(name = "page", defaultValue = "0") Integer page,
-            @RequestParam(name = "size", defaultValue = "10") Integer size) {
+            @RequestParam(name = "size", defaultValue = "10") Integer size,
+            @RequestParam(name = "cursorMode", defaultValue = "false") Boolean cursorMode,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "includes", required = false) String includes,
+            @RequestParam(name = "excludes", required = false) String excludes,
+            @RequestParam(name = "docValueFields", required = false) String docValueFields,
+            @RequestParam(name = "totalHits", required = false) String totalHits,
+            @RequestParam(name = "terminateAfter", required = false) Integer terminateAfter,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         
         try {
             String tenantId = ThreadLocalTenantResolver.getCurrentTenant();
@@ -51,9 +90,20 @@ public class SearchController {
             searchRequest.setDocumentType(documentType);
             searchRequest.setPage(page);
             searchRequest.setSize(size);
+            searchRequest.setCursorMode(cursorMode);
+            searchRequest.setCursor(cursor);
+            searchRequest.setIncludes(splitFields(includes));
+            searchRequest.setExcludes(splitFields(excludes));
+            searchRequest.setDocValueFields(splitFields(docValueFields));
+            searchRequest.setTotalHits(totalHits);
+            searchRequest.setTerminateAfter(terminateAfter);
             
-            SearchResponse response = documentSearchService.searchDocuments(tenantId, searchRequest);
-            return ResponseEntity.ok(response);
+            if (asyncEnabled) {
+                return respondAsync(tenantId, searchRequest, acceptEncoding);
+            }
+            return respond(tenantId, searchRequest, acceptEncoding);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (IOException e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -63,20 +113,137 @@ public class SearchController {
      * Advanced search with POST request (supports complex queries and filters)
      * 
      * @param searchRequest search request with query, filters, pagination
-     * @return search response with results
+     * @param acceptEncoding client's Accept-Encoding, to pass gzip-cached bodies through as is
+     * @return search response with results, or a future of it in async mode
      */
     @Ratelimit(name="search", permitsPerSecond = 3, burstCapacity=25)
     @PostMapping
-    public ResponseEntity<SearchResponse> searchAdvanced(@RequestBody SearchRequest searchRequest) {
+    public Object searchAdvanced(
+            @RequestBody SearchRequest searchRequest,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        try {
+            String tenantId = ThreadLocalTenantResolver.getCurrentTenant();
+            if (asyncEnabled) {
+                return respondAsync(tenantId, searchRequest, acceptEncoding);
+            }
+            return respond(tenantId, searchRequest, acceptEncoding);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Export every document matching a search as NDJSON, one search result per line, streamed as
+     * Elasticsearch returns them; gzip-compressed when the client accepts it. A stream cut short
+     * ends without its final chunk, so clients can tell it from a complete one. When as many exports
+     * as allowed are running, answers 503 with Retry-After.
+     *
+     * @param searchRequest query, filters and sort; size is the batch size, page is ignored
+     * @param slices number of slices to fetch in parallel, when worker threads are free (default: 1)
+     * @param acceptEncoding client's Accept-Encoding
+     * @return NDJSON stream of search results
+     */
+    @Ratelimit(name="export", permitsPerSecond = 0.2, burstCapacity=2)
+    @PostMapping("/_export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestBody SearchRequest searchRequest,
+            @RequestParam(name = "slices", defaultValue = "1") Integer slices,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
             String tenantId = ThreadLocalTenantResolver.getCurrentTenant();
-            SearchResponse response = documentSearchService.searchDocuments(tenantId, searchRequest);
-            return ResponseEntity.ok(response);
+            DocumentExportService.Export export = documentExportService.prepare(tenantId, searchRequest, slices);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (!acceptsGzip(acceptEncoding)) {
+                return builder.body(export::writeTo);
+            }
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(out -> {
+                // sync flush, so each batch reaches the client as it is written
+                GZIPOutputStream gzip = new GZIPOutputStream(out, 8192, true);
+                export.writeTo(gzip);
+                gzip.finish();
+            });
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(EXPORT_RETRY_AFTER_SECONDS))
+                .build();
         } catch (IOException e) {
             return ResponseEntity.internalServerError().build();
         }
     }
     
+    /**
+     * Write the search response. In serialized cache mode the cached JSON bytes are written as is,
+     * still gzip-compressed when the client accepts it, instead of being serialized again.
+     */
+    private ResponseEntity<?> respond(String tenantId, SearchRequest searchRequest, String acceptEncoding)
+            throws IOException {
+        if (!documentSearchService.isSerializedResponses()) {
+            return ResponseEntity.ok(documentSearchService.searchDocuments(tenantId, searchRequest));
+        }
+        return serialized(documentSearchService.searchDocumentsSerialized(tenantId, searchRequest), acceptEncoding);
+    }
+
+    /**
+     * {@link #respond} without blocking. The tenant is passed in, as the response may complete on
+     * another thread; errors map to the same statuses.
+     */
+    private CompletableFuture<ResponseEntity<?>> respondAsync(String tenantId, SearchRequest searchRequest,
+                                                              String acceptEncoding) {
+        CompletableFuture<ResponseEntity<?>> response = documentSearchService.isSerializedResponses()
+            ? documentSearchService.searchDocumentsSerializedAsync(tenantId, searchRequest)
+                .thenApply(serialized -> {
+                    try {
+                        return serialized(serialized, acceptEncoding);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                })
+            : documentSearchService.searchDocumentsAsync(tenantId, searchRequest)
+                .thenApply(ResponseEntity::ok);
+        return response.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IllegalArgumentException) {
+                return ResponseEntity.badRequest().build();
+            }
+            if (cause instanceof IOException) {
+                return ResponseEntity.internalServerError().build();
+            }
+            throw e instanceof CompletionException ce ? ce : new CompletionException(cause);
+        });
+    }
+
+    private static ResponseEntity<?> serialized(SerializedSearchResponse response, String acceptEncoding)
+            throws IOException {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (response.isGzipped() && acceptsGzip(acceptEncoding)) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(response.getBody());
+        }
+        return builder.body(response.getJson());
+    }
+
+    private static List<String> splitFields(String fields) {
+        return fields == null || fields.isBlank() ? null : Arrays.asList(fields.split(","));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+    
     /**
      * Get a document by ID
      * 
@@ -91,7 +258,7 @@ public class SearchController {
             @PathVariable(name = "documentType") String documentType) {
 
         String tenantId = ThreadLocalTenantResolver.getCurrentTenant();
-        Object document = documentSearchService.getActiveDoc(tenantId, documentType, documentId);
+        Object document = documentLookupService.getActiveDoc(tenantId, documentType, documentId);
 
         if (document != null) {
             return ResponseEntity.ok(document);
@@ -100,6 +267,28 @@ public class SearchController {
         }
     }
     
+    /**
+     * Get several documents of one type by ID in a single round trip
+     * 
+     * @param documentType document type
+     * @param request IDs to fetch (at most search.mget.max-ids)
+     * @return documents found, by ID, and IDs not found
+     */
+    @Ratelimit(name="fetch-batch", permitsPerSecond = 2, burstCapacity=10)
+    @PostMapping("/{documentType}/_mget")
+    public ResponseEntity<MultiGetResponse> getDocuments(
+            @PathVariable(name = "documentType") String documentType,
+            @RequestBody MultiGetRequest request) {
+        try {
+            String tenantId = ThreadLocalTenantResolver.getCurrentTenant();
+            return ResponseEntity.ok(documentLookupService.multiGetActiveDocs(tenantId, documentType, request.getIds()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
     /**
      * Health check endpoint
      */
@@ -0,0 +1,122 @@
+package ai.deeprunner.searcher.invalidation;
+
+import ai.deeprunner.indexer.event.DocumentChangedEvent;
+import ai.deeprunner.searcher.cache.DocumentKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fans search cache invalidations out to every searcher replica.
+ * Writes applied on this instance are coalesced per tenant / document type for a short window,
+ * then sent as one message to a fanout destination, so a burst of writes costs one broadcast.
+ * The message also lists the written documents, up to a limit, so peers can drop exactly those
+ * from their document caches.
+ */
+@Component
+@Slf4j
+public class CacheInvalidationBroadcaster {
+
+    public static final String INVALIDATION_OUTPUT = "cacheInvalidation-out-0";
+
+    private final StreamBridge streamBridge;
+    private final boolean enabled;
+    private final long coalesceMs;
+    private final int maxDocuments;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Set<CacheInvalidationMessage.Scope> pending = ConcurrentHashMap.newKeySet();
+    private final Map<DocumentKey, CacheInvalidationMessage.DocumentRef> pendingDocuments = new ConcurrentHashMap<>();
+    private final AtomicBoolean documentsOverflowed = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidation-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CacheInvalidationBroadcaster(StreamBridge streamBridge,
+                                        @Value("${search.cache.invalidation.broadcast.enabled:true}") boolean enabled,
+                                        @Value("${search.cache.invalidation.broadcast.coalesce-ms:100}") long coalesceMs,
+                                        @Value("${search.cache.invalidation.broadcast.max-documents:1000}") int maxDocuments) {
+        this.streamBridge = streamBridge;
+        this.enabled = enabled;
+        this.coalesceMs = coalesceMs;
+        this.maxDocuments = maxDocuments;
+    }
+
+    @EventListener
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        pending.add(new CacheInvalidationMessage.Scope(event.getTenantId(), event.getDocumentType()));
+        if (pendingDocuments.size() < maxDocuments) {
+            // later writes to the same document carry higher sequence numbers and replace earlier ones
+            pendingDocuments.put(new DocumentKey(event.getTenantId(), event.getDocumentType(), event.getDocumentId()),
+                new CacheInvalidationMessage.DocumentRef(event.getTenantId(), event.getDocumentType(),
+                    event.getDocumentId(), event.getSeqNo(), event.getPrimaryTerm()));
+        } else {
+            documentsOverflowed.set(true);
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, coalesceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return true if the message was sent by this instance
+     */
+    public boolean isLocal(CacheInvalidationMessage message) {
+        return instanceId.equals(message.getOrigin());
+    }
+
+    void flush() {
+        // clear the flag first: scopes added from here on either drain now or schedule a new flush
+        flushScheduled.set(false);
+        // documents before scopes: a document's scope is always added first, so it is never left behind
+        boolean overflowed = documentsOverflowed.getAndSet(false);
+        List<CacheInvalidationMessage.DocumentRef> documents = new ArrayList<>();
+        for (Iterator<CacheInvalidationMessage.DocumentRef> it = pendingDocuments.values().iterator(); it.hasNext(); ) {
+            documents.add(it.next());
+            it.remove();
+        }
+        List<CacheInvalidationMessage.Scope> scopes = new ArrayList<>();
+        for (Iterator<CacheInvalidationMessage.Scope> it = pending.iterator(); it.hasNext(); ) {
+            scopes.add(it.next());
+            it.remove();
+        }
+        if (scopes.isEmpty() && documents.isEmpty()) {
+            return;
+        }
+        try {
+            streamBridge.send(INVALIDATION_OUTPUT, new CacheInvalidationMessage(instanceId, scopes,
+                overflowed ? null : documents, System.currentTimeMillis()));
+            log.debug("Broadcast search cache invalidation for {} scopes, {} documents",
+                scopes.size(), overflowed ? "all" : documents.size());
+        } catch (Exception e) {
+            // peers fall back to TTL expiry for these scopes
+            log.error("Failed to broadcast search cache invalidation for {} scopes", scopes.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,55 @@
+package ai.deeprunner.searcher.invalidation;
+
+import ai.deeprunner.searcher.cache.DocumentExistenceFilter;
+import ai.deeprunner.searcher.cache.DocumentKey;
+import ai.deeprunner.searcher.cache.DocumentNearCache;
+import ai.deeprunner.searcher.cache.SearchCacheGenerations;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.Consumer;
+
+/**
+ * Functional consumer for search cache invalidation broadcasts
+ * Automatically wired to cacheInvalidation-in-0 channel; the binding has no consumer group,
+ * so every replica gets its own queue and receives every message
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class CacheInvalidationConsumer {
+
+    private final SearchCacheGenerations generations;
+    private final DocumentNearCache documentCache;
+    private final DocumentExistenceFilter existenceFilter;
+    private final CacheInvalidationBroadcaster broadcaster;
+
+    @Bean
+    public Consumer<CacheInvalidationMessage> cacheInvalidation() {
+        return message -> {
+            // writes applied here already invalidated the local cache
+            if (broadcaster.isLocal(message) || message.getScopes() == null) {
+                return;
+            }
+            for (CacheInvalidationMessage.Scope scope : message.getScopes()) {
+                generations.bump(scope.getTenantId(), scope.getDocumentType());
+                if (message.getDocuments() == null) {
+                    documentCache.invalidateScope(scope.getTenantId(), scope.getDocumentType());
+                    existenceFilter.invalidateScope(scope.getTenantId(), scope.getDocumentType());
+                }
+            }
+            if (message.getDocuments() != null) {
+                for (CacheInvalidationMessage.DocumentRef document : message.getDocuments()) {
+                    DocumentKey documentKey =
+                        new DocumentKey(document.getTenantId(), document.getDocumentType(), document.getDocumentId());
+                    documentCache.invalidate(documentKey, document.getSeqNo(), document.getPrimaryTerm());
+                    existenceFilter.recordWrite(documentKey);
+                }
+            }
+            log.debug("Applied search cache invalidation for {} scopes from {} ({}ms after send)",
+                message.getScopes().size(), message.getOrigin(), System.currentTimeMillis() - message.getSentAt());
+        };
+    }
+}
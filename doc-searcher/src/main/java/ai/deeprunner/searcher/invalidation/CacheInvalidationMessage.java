@@ -0,0 +1,56 @@
+package ai.deeprunner.searcher.invalidation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Broadcast message telling every searcher replica to invalidate cached results
+ * for a batch of tenant / document type scopes, and cached copies of the written documents
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidationMessage {
+    /**
+     * Instance ID of the replica that applied the writes
+     */
+    private String origin;
+
+    /**
+     * Distinct scopes written since the previous broadcast
+     */
+    private List<Scope> scopes;
+
+    /**
+     * Documents written since the previous broadcast, or null if there were too many to list;
+     * receivers then drop every cached document of the listed scopes
+     */
+    private List<DocumentRef> documents;
+
+    /**
+     * Epoch millis when the batch was sent
+     */
+    private long sentAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Scope {
+        private String tenantId;
+        private String documentType;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DocumentRef {
+        private String tenantId;
+        private String documentType;
+        private String documentId;
+        private Long seqNo;
+        private Long primaryTerm;
+    }
+}
@@ -0,0 +1,52 @@
+package ai.deeprunner.searcher.invalidation;
+
+import ai.deeprunner.searcher.cache.DocumentExistenceFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.AsyncConsumerStartedEvent;
+import org.springframework.amqp.rabbit.listener.ListenerContainerConsumerFailedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Follows the invalidation broadcast subscription. Its queue is anonymous and dropped with the
+ * connection, so broadcasts sent while it is down are lost; state that relies on seeing every write
+ * stops being trusted until the consumer is subscribed again.
+ */
+@Component
+@Slf4j
+public class CacheInvalidationSubscriptionListener {
+
+    private final DocumentExistenceFilter existenceFilter;
+    private final String queuePrefix;
+
+    public CacheInvalidationSubscriptionListener(DocumentExistenceFilter existenceFilter,
+                                                 @Value("${spring.cloud.stream.bindings.cacheInvalidation-in-0.destination:search-cache-invalidation}")
+                                                 String destination) {
+        this.existenceFilter = existenceFilter;
+        this.queuePrefix = destination + ".";
+    }
+
+    @EventListener
+    public void onConsumerFailed(ListenerContainerConsumerFailedEvent event) {
+        if (isInvalidationQueue(event.getSource())) {
+            existenceFilter.suspend();
+        }
+    }
+
+    @EventListener
+    public void onConsumerStarted(AsyncConsumerStartedEvent event) {
+        if (isInvalidationQueue(event.getSource())) {
+            log.info("Subscribed to search cache invalidations");
+            existenceFilter.resume();
+        }
+    }
+
+    private boolean isInvalidationQueue(Object container) {
+        return container instanceof AbstractMessageListenerContainer listenerContainer
+            && Arrays.stream(listenerContainer.getQueueNames()).anyMatch(queue -> queue.startsWith(queuePrefix));
+    }
+}
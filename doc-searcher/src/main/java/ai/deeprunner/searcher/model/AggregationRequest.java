@@ -0,0 +1,61 @@
+package ai.deeprunner.searcher.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request model for one facet of a search: counts of the matching documents by value, range or
+ * interval of a field, or the number of distinct values it holds
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AggregationRequest {
+    /**
+     * Aggregation type: terms, range, histogram or cardinality
+     */
+    private String type;
+
+    /**
+     * Keyword, numeric or date field to aggregate on
+     */
+    private String field;
+
+    /**
+     * For terms, number of most frequent values to return (default: 10)
+     */
+    private Integer size;
+
+    /**
+     * For range, the buckets to count, in order
+     */
+    private List<Range> ranges;
+
+    /**
+     * For histogram, width of each bucket
+     */
+    private Double interval;
+
+    /**
+     * A range bucket; from is inclusive, to exclusive, either may be left open
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Range {
+        /**
+         * Bucket name in the response; derived from the bounds when unset
+         */
+        private String key;
+
+        private Double from;
+
+        private Double to;
+    }
+}
@@ -0,0 +1,63 @@
+package ai.deeprunner.searcher.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Response model for one facet of a search
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AggregationResult {
+    /**
+     * Aggregation type, as requested
+     */
+    private String type;
+
+    /**
+     * For terms, range and histogram, the buckets with their document counts
+     */
+    private List<Bucket> buckets;
+
+    /**
+     * For terms, documents whose values fell outside the returned buckets
+     */
+    private Long otherDocCount;
+
+    /**
+     * For cardinality, the approximate number of distinct values
+     */
+    private Long value;
+
+    /**
+     * A bucket and the number of matching documents in it
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bucket {
+        /**
+         * Term, range key or interval start
+         */
+        private Object key;
+
+        /**
+         * For range, the lower bound
+         */
+        private Double from;
+
+        /**
+         * For range, the upper bound
+         */
+        private Double to;
+
+        private long docCount;
+    }
+}
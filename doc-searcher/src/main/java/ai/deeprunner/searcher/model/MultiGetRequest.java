@@ -0,0 +1,22 @@
+package ai.deeprunner.searcher.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request model for fetching several documents of one type by ID
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultiGetRequest {
+    /**
+     * Document IDs to fetch
+     */
+    private List<String> ids;
+}
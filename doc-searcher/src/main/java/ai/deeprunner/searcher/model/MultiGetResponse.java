@@ -0,0 +1,28 @@
+package ai.deeprunner.searcher.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response model for fetching several documents of one type by ID
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultiGetResponse {
+    /**
+     * Active documents by ID, in request order
+     */
+    private Map<String, Map<String, Object>> documents;
+
+    /**
+     * Requested IDs that do not exist or are soft-deleted
+     */
+    private List<String> notFound;
+}
@@ -0,0 +1,200 @@
+package ai.deeprunner.searcher.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A typed filter, read from one entry of {@link SearchRequest#getFilters()}. The value decides the
+ * kind:
+ * <ul>
+ *   <li>a string, number or boolean: the field has exactly that value (term)</li>
+ *   <li>a list, or {"terms": [...]}: the field has any of the values (terms)</li>
+ *   <li>{"gt"|"gte"|"lt"|"lte": bound, "format": ..., "time_zone": ...}: range, dates with date math</li>
+ *   <li>{"prefix": "abc"}: the field starts with the value (prefix)</li>
+ *   <li>{"exists": true|false}: the field has a value, or has none (exists)</li>
+ * </ul>
+ * Filters are kept in the shape that lets Elasticsearch reuse cached results: term sets are sorted
+ * and de-duplicated, and date math relative to now that is not already rounded is rounded to the
+ * minute, so the same filter within a minute is the same query. The canonical form is what the
+ * search cache keys on.
+ */
+public final class SearchFilter {
+
+    /**
+     * Rounding applied to unrounded now-relative date math
+     */
+    public static final String NOW_ROUNDING = "/m";
+
+    private static final Set<String> RANGE_BOUNDS = Set.of("gt", "gte", "lt", "lte");
+    private static final Set<String> RANGE_OPTIONS = Set.of("format", "time_zone");
+
+    public enum Kind {
+        TERM, TERMS, RANGE, PREFIX, EXISTS
+    }
+
+    private final String field;
+    private final Kind kind;
+    private final String value;
+    private final List<String> values;
+    private final Map<String, Object> range;
+    private final boolean exists;
+
+    private SearchFilter(String field, Kind kind, String value, List<String> values, Map<String, Object> range,
+                         boolean exists) {
+        this.field = field;
+        this.kind = kind;
+        this.value = value;
+        this.values = values;
+        this.range = range;
+        this.exists = exists;
+    }
+
+    /**
+     * @param field filtered field
+     * @param value filter value, as it came in the request
+     * @throws IllegalArgumentException if the value is not one of the filter forms
+     */
+    public static SearchFilter of(String field, Object value) {
+        if (field == null || field.isBlank()) {
+            throw new IllegalArgumentException("Filter field must not be empty");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Filter " + field + " has no value");
+        }
+        if (value instanceof Collection<?> collection) {
+            return terms(field, collection);
+        }
+        if (!(value instanceof Map<?, ?> map)) {
+            return new SearchFilter(field, Kind.TERM, value.toString(), null, null, false);
+        }
+        if (map.size() == 1 && map.containsKey("terms")) {
+            if (!(map.get("terms") instanceof Collection<?> collection)) {
+                throw new IllegalArgumentException("Filter " + field + ": terms must be a list");
+            }
+            return terms(field, collection);
+        }
+        if (map.size() == 1 && map.containsKey("prefix")) {
+            Object prefix = map.get("prefix");
+            if (prefix == null || prefix instanceof Map || prefix instanceof Collection) {
+                throw new IllegalArgumentException("Filter " + field + ": prefix must be a string");
+            }
+            return new SearchFilter(field, Kind.PREFIX, prefix.toString(), null, null, false);
+        }
+        if (map.size() == 1 && map.containsKey("exists")) {
+            Object exists = map.get("exists");
+            if (!(exists instanceof Boolean) && !"true".equals(exists) && !"false".equals(exists)) {
+                throw new IllegalArgumentException("Filter " + field + ": exists must be true or false");
+            }
+            return new SearchFilter(field, Kind.EXISTS, null, null, null, Boolean.parseBoolean(exists.toString()));
+        }
+        return range(field, map);
+    }
+
+    private static SearchFilter terms(String field, Collection<?> collection) {
+        Set<String> sorted = new TreeSet<>();
+        for (Object element : collection) {
+            if (element == null || element instanceof Map || element instanceof Collection) {
+                throw new IllegalArgumentException("Filter " + field + ": terms must be strings, numbers or booleans");
+            }
+            sorted.add(element.toString());
+        }
+        if (sorted.isEmpty()) {
+            throw new IllegalArgumentException("Filter " + field + ": terms must not be empty");
+        }
+        return new SearchFilter(field, Kind.TERMS, null, List.copyOf(sorted), null, false);
+    }
+
+    private static SearchFilter range(String field, Map<?, ?> map) {
+        Map<String, Object> range = new TreeMap<>();
+        boolean bounded = false;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = String.valueOf(entry.getKey()).trim().toLowerCase();
+            if (key.equals("timezone")) {
+                key = "time_zone";
+            }
+            Object bound = entry.getValue();
+            if (RANGE_BOUNDS.contains(key)) {
+                if (bound == null || bound instanceof Map || bound instanceof Collection) {
+                    throw new IllegalArgumentException("Filter " + field + ": " + key + " must be a number or date");
+                }
+                range.put(key, bound instanceof String s ? roundNow(s.trim()) : bound);
+                bounded = true;
+            } else if (RANGE_OPTIONS.contains(key) && bound instanceof String s) {
+                range.put(key, s.trim());
+            } else {
+                throw new IllegalArgumentException("Filter " + field + ": unknown operator " + entry.getKey());
+            }
+        }
+        if (!bounded) {
+            throw new IllegalArgumentException("Filter " + field + " needs gt, gte, lt or lte");
+        }
+        return new SearchFilter(field, Kind.RANGE, null, null, Collections.unmodifiableMap(range), false);
+    }
+
+    /**
+     * Round date math relative to now, such as "now-1h", to the minute, unless it is rounded already
+     */
+    static String roundNow(String bound) {
+        if (!bound.startsWith("now") || bound.indexOf('/') >= 0) {
+            return bound;
+        }
+        return bound + NOW_ROUNDING;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return for term, the value; for prefix, the prefix
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return for terms, the values, sorted and distinct
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * @return for range, the bounds and options by operator, in operator order
+     */
+    public Map<String, Object> getRange() {
+        return range;
+    }
+
+    /**
+     * @return for exists, whether the field must have a value rather than have none
+     */
+    public boolean isExists() {
+        return exists;
+    }
+
+    /**
+     * @return the filter in canonical request form: a term as the string Elasticsearch is sent,
+     * a terms set as a sorted list, any other kind as a map of its operators; equal for every
+     * spelling of the same filter
+     */
+    public Object canonicalValue() {
+        return switch (kind) {
+            case TERM -> value;
+            case TERMS -> new ArrayList<>(values);
+            case RANGE -> new TreeMap<>(range);
+            case PREFIX -> new TreeMap<>(Map.of("prefix", value));
+            case EXISTS -> new TreeMap<>(Map.of("exists", exists));
+        };
+    }
+}
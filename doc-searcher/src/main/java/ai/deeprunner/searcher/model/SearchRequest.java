@@ -30,6 +30,21 @@ public class SearchRequest {
      * Document type filter
      */
     private String documentType;
+
+    /**
+     * Document types to search together, merged into one ranked page; replaces documentType
+     */
+    private List<String> documentTypes;
+
+    /**
+     * With documentTypes, score multipliers by document type (default: 1)
+     */
+    private Map<String, Double> typeBoosts;
+
+    /**
+     * With documentTypes, most hits any one type contributes to the merged ranking
+     */
+    private Integer perTypeTopK;
     
     /**
      * Page number (0-indexed)
@@ -50,4 +65,48 @@ public class SearchRequest {
      * Additional filters (field -> value mappings)
      */
     private Map<String, Object> filters;
+
+    /**
+     * Page through a consistent snapshot with a cursor instead of page numbers;
+     * the response carries the cursor for the next page
+     */
+    private Boolean cursorMode;
+
+    /**
+     * Cursor returned with the previous page, for the next one; implies cursor mode, page is ignored
+     */
+    private String cursor;
+
+    /**
+     * Source fields to return, wildcards allowed; all when empty
+     */
+    private List<String> includes;
+
+    /**
+     * Source fields to leave out, wildcards allowed
+     */
+    private List<String> excludes;
+
+    /**
+     * Keyword, numeric or date fields to return from doc values, in each result's fields;
+     * without includes or excludes, the source is then not returned at all
+     */
+    private List<String> docValueFields;
+
+    /**
+     * How to count total hits: "exact", "none", or a number N to count exactly up to N and report
+     * a lower bound beyond; search.total-hits.default when unset
+     */
+    private String totalHits;
+
+    /**
+     * Stop collecting after this many hits per shard, for queries that only need the top hits;
+     * the total then counts only the hits collected
+     */
+    private Integer terminateAfter;
+
+    /**
+     * Facets to count over all matching documents, by name; computed and cached apart from the hits
+     */
+    private Map<String, AggregationRequest> aggregations;
 }
@@ -1,17 +1,19 @@
 package ai.deeprunner.searcher.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Response model for document search operations
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class SearchResponse {
@@ -21,7 +23,8 @@ public class SearchResponse {
     private List<SearchResult> results;
     
     /**
-     * Total number of documents matching the query
+     * Total number of documents matching the query, or a lower bound if not exact;
+     * null if hits were not counted
      */
     private Long total;
     
@@ -36,7 +39,7 @@ public class SearchResponse {
     private Integer size;
     
     /**
-     * Total number of pages
+     * Total number of pages, from the total; null if hits were not counted
      */
     private Integer totalPages;
     
@@ -44,4 +47,34 @@ public class SearchResponse {
      * Search execution time in milliseconds
      */
     private Long tookMs;
+
+    /**
+     * In cursor mode, the cursor for the next page; null on the last page
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    /**
+     * Whether the total is the exact number of matching documents rather than a lower bound
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean totalExact;
+
+    /**
+     * Whether collection stopped early at terminateAfter; null if it was not requested
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean terminatedEarly;
+
+    /**
+     * For searches across several document types, total hits by type
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Long> typeTotals;
+
+    /**
+     * Facets requested with the search, by name
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, AggregationResult> aggregations;
 }
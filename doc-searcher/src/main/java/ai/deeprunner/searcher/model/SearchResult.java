@@ -1,10 +1,12 @@
 package ai.deeprunner.searcher.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -34,4 +36,22 @@ public class SearchResult {
      * Index name where the document was found
      */
     private String index;
+
+    /**
+     * Values of the requested doc value fields, by field
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, List<Object>> fields;
+
+    /**
+     * Sort values of the hit, for searches with an explicit sort
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Object> sort;
+
+    /**
+     * Document type the result was found in, for searches across several types
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String documentType;
 }
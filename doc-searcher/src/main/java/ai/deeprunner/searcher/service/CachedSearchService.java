@@ -0,0 +1,375 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.cache.CachedSearchResponse;
+import ai.deeprunner.searcher.cache.InMemorySearchCache;
+import ai.deeprunner.searcher.cache.RawSearchHits;
+import ai.deeprunner.searcher.cache.SearchCacheKey;
+import ai.deeprunner.searcher.cache.SearchResponseCodec;
+import ai.deeprunner.searcher.cache.SerializedSearchResponse;
+import ai.deeprunner.searcher.cache.SingleFlight;
+import ai.deeprunner.searcher.model.SearchRequest;
+import ai.deeprunner.searcher.model.SearchResponse;
+import ai.deeprunner.searcher.model.SearchResult;
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import co.elastic.clients.elasticsearch.core.search.TotalHits;
+import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
+import co.elastic.clients.transport.endpoints.BinaryEndpoint;
+import co.elastic.clients.transport.endpoints.BinaryResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches one document type of a tenant through the search cache. Concurrent identical searches
+ * share a single Elasticsearch round trip, and under load are batched with other searches into
+ * multi-searches. With raw sources, serialized responses are rendered from Elasticsearch's
+ * response bytes, hit sources copied through without being parsed.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CachedSearchService {
+
+    private static final BinaryEndpoint<co.elastic.clients.elasticsearch.core.SearchRequest> RAW_SEARCH =
+        co.elastic.clients.elasticsearch.core.SearchRequest._ENDPOINT.withBinaryResponse();
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
+    private final SearchQueryBuilder queryBuilder;
+    private final InMemorySearchCache searchCache;
+    private final SearchResponseCodec responseCodec;
+    private final SearchBatcher searchBatcher;
+    private final SingleFlight<SearchFlightKey, CachedSearchResponse> searchFlights = new SingleFlight<>();
+    private final Set<SearchCacheKey> refreshing = ConcurrentHashMap.newKeySet();
+
+    @Value("${search.cache.refresh.threads:2}")
+    private int refreshThreads;
+
+    @Value("${search.cache.refresh.queue-size:256}")
+    private int refreshQueueSize;
+
+    @Value("${search.cache.serialized.raw-source:false}")
+    private boolean rawSource;
+
+    @Value("${search.batch.await-timeout-ms:30000}")
+    private long batchAwaitTimeoutMs;
+
+    @Value("${search.async.completion-threads:0}")
+    private int completionThreads;
+
+    @Value("${search.async.completion-queue-size:1024}")
+    private int completionQueueSize;
+
+    private ThreadPoolExecutor refreshExecutor;
+
+    private ThreadPoolExecutor completionExecutor;
+
+    @PostConstruct
+    public void startRefreshExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // bounded: when refreshes back up, stale entries keep being served until their hard TTL
+        refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(refreshQueueSize), r -> {
+                Thread thread = new Thread(r, "search-cache-refresh-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        refreshExecutor.allowCoreThreadTimeOut(true);
+
+        // converts async responses off the HTTP client's I/O threads; the work is CPU-bound and short.
+        // Bounded: when conversions back up, the I/O thread converts its own response, which slows
+        // the client down instead of queueing responses without limit
+        int threads = completionThreads > 0 ? completionThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger completionCount = new AtomicInteger();
+        completionExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(completionQueueSize), r -> {
+                Thread thread = new Thread(r, "search-async-" + completionCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        completionExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void stopRefreshExecutor() {
+        refreshExecutor.shutdownNow();
+        completionExecutor.shutdownNow();
+    }
+    
+    /**
+     * Search one document type. A fresh cached result is served as is; one past its soft TTL is
+     * served and refreshed in the background; one superseded by a write is searched again, and
+     * served instead of the error if Elasticsearch fails while it is within its hard TTL.
+     *
+     * @throws IOException if Elasticsearch operation fails and nothing is cached
+     */
+    public CachedSearchResponse search(String tenantId, SearchRequest searchRequest) throws IOException {
+        String documentType = searchRequest.getDocumentType() != null ? searchRequest.getDocumentType() : "document";
+
+        // Cache lookup before any query construction
+        SearchCacheKey cacheKey = SearchCacheKey.of(tenantId, documentType, searchRequest);
+        CachedSearchResponse cached = searchCache.getEntry(cacheKey);
+        if (cached != null) {
+            switch (searchCache.freshness(cacheKey, cached)) {
+                case FRESH:
+                    return cached;
+                case STALE:
+                    refreshInBackground(tenantId, documentType, searchRequest, cacheKey);
+                    return cached;
+                case INVALIDATED:
+                    // a write superseded it: search again, keeping it only as an error fallback
+                    break;
+            }
+        }
+
+        try {
+            return searchWithCoalescing(tenantId, documentType, searchRequest, cacheKey);
+        } catch (IOException | ElasticsearchException e) {
+            if (cached == null) {
+                throw e;
+            }
+            searchCache.recordErrorFallback();
+            log.warn("Search failed for tenant {}, serving cached result instead: {}", tenantId, e.getMessage());
+            return cached;
+        }
+    }
+
+    /**
+     * {@link #search} without blocking: cache hits complete immediately, misses when Elasticsearch
+     * answers, holding no thread meanwhile
+     *
+     * @return future cached response, failing with the IOException or ElasticsearchException of the search
+     */
+    public CompletableFuture<CachedSearchResponse> searchAsync(String tenantId, SearchRequest searchRequest) {
+        String documentType = searchRequest.getDocumentType() != null ? searchRequest.getDocumentType() : "document";
+        SearchCacheKey cacheKey = SearchCacheKey.of(tenantId, documentType, searchRequest);
+        CachedSearchResponse cached = searchCache.getEntry(cacheKey);
+        if (cached != null) {
+            switch (searchCache.freshness(cacheKey, cached)) {
+                case FRESH:
+                    return CompletableFuture.completedFuture(cached);
+                case STALE:
+                    refreshInBackground(tenantId, documentType, searchRequest, cacheKey);
+                    return CompletableFuture.completedFuture(cached);
+                case INVALIDATED:
+                    break;
+            }
+        }
+
+        long cacheGeneration = searchCache.currentGeneration(cacheKey);
+        CompletableFuture<CachedSearchResponse> result = searchFlights.executeAsync(
+            new SearchFlightKey(cacheKey, cacheGeneration),
+            () -> executeSearchAsync(tenantId, documentType, searchRequest, cacheKey, cacheGeneration));
+        if (cached == null) {
+            return result;
+        }
+        return result.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (!(cause instanceof IOException || cause instanceof ElasticsearchException)) {
+                throw e instanceof CompletionException ce ? ce : new CompletionException(cause);
+            }
+            searchCache.recordErrorFallback();
+            log.warn("Search failed for tenant {}, serving cached result instead: {}", tenantId, cause.getMessage());
+            return cached;
+        });
+    }
+
+    private CachedSearchResponse searchWithCoalescing(String tenantId, String documentType, SearchRequest searchRequest,
+                                                SearchCacheKey cacheKey) throws IOException {
+        // Captured before querying so a write landing mid-search keeps this result out of the cache;
+        // also part of the flight key so callers arriving after a write never join an older search
+        long cacheGeneration = searchCache.currentGeneration(cacheKey);
+        return searchFlights.execute(new SearchFlightKey(cacheKey, cacheGeneration),
+            () -> executeSearch(tenantId, documentType, searchRequest, cacheKey, cacheGeneration));
+    }
+
+    /**
+     * Re-run a search whose cached result is past its soft TTL, at most once at a time per key
+     */
+    void refreshInBackground(String tenantId, String documentType, SearchRequest searchRequest,
+                                     SearchCacheKey cacheKey) {
+        if (!refreshing.add(cacheKey)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    searchWithCoalescing(tenantId, documentType, searchRequest, cacheKey);
+                } catch (Exception e) {
+                    log.warn("Background refresh failed for tenant {}: {}", tenantId, e.getMessage());
+                } finally {
+                    refreshing.remove(cacheKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(cacheKey);
+            log.debug("Refresh queue full, skipping background refresh for tenant {}", tenantId);
+        }
+    }
+
+    private CachedSearchResponse executeSearch(String tenantId, String documentType, SearchRequest searchRequest,
+                                         SearchCacheKey cacheKey, long cacheGeneration) throws IOException {
+        co.elastic.clients.elasticsearch.core.SearchRequest esSearchRequest =
+            buildSearch(tenantId, documentType, searchRequest);
+
+        if (isRawSource()) {
+            long startTime = System.currentTimeMillis();
+            try (BinaryResponse response = elasticsearchClient._transport()
+                .performRequest(esSearchRequest, RAW_SEARCH, elasticsearchClient._transportOptions())) {
+                RawSearchHits hits = RawSearchHits.parse(response.content());
+                return putRaw(cacheKey, hits, searchRequest, System.currentTimeMillis() - startTime, cacheGeneration);
+            }
+        }
+
+        // Execute search, batched with concurrent ones when batching is on
+        long startTime = System.currentTimeMillis();
+        ResponseBody<Map> esResponse = searchBatcher.isEnabled()
+            ? awaitBatched(esSearchRequest)
+            : elasticsearchClient.search(esSearchRequest, Map.class);
+
+        long tookMs = System.currentTimeMillis() - startTime;
+        return searchCache.put(cacheKey, toSearchResponse(esResponse, searchRequest, tookMs), cacheGeneration);
+    }
+
+    /**
+     * The search on the async client, converted and cached on the completion executor
+     */
+    private CompletableFuture<CachedSearchResponse> executeSearchAsync(String tenantId, String documentType,
+                                                                       SearchRequest searchRequest,
+                                                                       SearchCacheKey cacheKey, long cacheGeneration) {
+        co.elastic.clients.elasticsearch.core.SearchRequest esSearchRequest =
+            buildSearch(tenantId, documentType, searchRequest);
+        long startTime = System.currentTimeMillis();
+        if (isRawSource()) {
+            return elasticsearchAsyncClient._transport()
+                .performRequestAsync(esSearchRequest, RAW_SEARCH, elasticsearchAsyncClient._transportOptions())
+                .thenApplyAsync(response -> {
+                    try (response) {
+                        RawSearchHits hits = RawSearchHits.parse(response.content());
+                        return putRaw(cacheKey, hits, searchRequest, System.currentTimeMillis() - startTime,
+                            cacheGeneration);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, completionExecutor);
+        }
+        return searchBatcher.search(esSearchRequest)
+            .thenApplyAsync(esResponse -> searchCache.put(cacheKey,
+                toSearchResponse(esResponse, searchRequest, System.currentTimeMillis() - startTime),
+                cacheGeneration), completionExecutor);
+    }
+
+    /**
+     * Wait for a search sent through the batcher, rethrowing its failure as the blocking client would.
+     * A search that does not complete in time fails with an IOException, like a socket timeout.
+     */
+    private ResponseBody<Map> awaitBatched(co.elastic.clients.elasticsearch.core.SearchRequest esSearchRequest)
+            throws IOException {
+        try {
+            return searchBatcher.search(esSearchRequest).get(batchAwaitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for batched search", e);
+        } catch (TimeoutException e) {
+            throw new IOException("Batched search did not complete within " + batchAwaitTimeoutMs + " ms", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Raw sources are only worth it when responses are cached and written as bytes anyway
+     */
+    private boolean isRawSource() {
+        return rawSource && searchCache.isSerialized();
+    }
+
+    private CachedSearchResponse putRaw(SearchCacheKey cacheKey, RawSearchHits hits, SearchRequest searchRequest,
+                                       long tookMs, long cacheGeneration) throws IOException {
+        SerializedSearchResponse serialized =
+            responseCodec.encode(hits, searchRequest.getPage(), searchRequest.getSize(), tookMs,
+                SearchResults.hasExplicitSort(searchRequest));
+        log.info("Search completed - Found {} documents in {}ms", hits.total(), tookMs);
+        return searchCache.put(cacheKey, serialized, cacheGeneration);
+    }
+
+    /**
+     * The Elasticsearch search for one document type, on the tenant's read alias
+     */
+    co.elastic.clients.elasticsearch.core.SearchRequest buildSearch(String tenantId, String documentType,
+                                                                   SearchRequest searchRequest) {
+        Query finalQuery = queryBuilder.buildQuery(searchRequest, tenantId);
+        // Use alias identified by tenantId
+        String aliasName = String.format("%s-%s-read", tenantId, documentType);
+        log.trace("Final query for tenant {}: {}", tenantId, finalQuery);
+        return queryBuilder.buildSearchRequest(finalQuery, searchRequest).index(aliasName).build();
+    }
+
+    SearchResponse toSearchResponse(ResponseBody<Map> esResponse, SearchRequest searchRequest, long tookMs) {
+        // Convert results, with sort values when they are not just the score
+        boolean withSort = SearchResults.hasExplicitSort(searchRequest);
+        List<SearchResult> results = new ArrayList<>();
+        for (Hit<Map> hit : esResponse.hits().hits()) {
+            results.add(SearchResults.of(hit, withSort));
+        }
+        
+        // no total when hits were not counted
+        TotalHits totalHits = esResponse.hits().total();
+        Long total = totalHits != null ? totalHits.value() : null;
+        
+        SearchResponse searchResponse = new SearchResponse();
+        searchResponse.setResults(results);
+        searchResponse.setTotal(total);
+        searchResponse.setPage(searchRequest.getPage());
+        searchResponse.setSize(searchRequest.getSize());
+        searchResponse.setTotalPages(SearchResults.totalPages(total, searchRequest.getSize()));
+        searchResponse.setTookMs(tookMs);
+        searchResponse.setTotalExact(totalHits != null && totalHits.relation() == TotalHitsRelation.Eq);
+        searchResponse.setTerminatedEarly(esResponse.terminatedEarly());
+        
+        log.info("Search completed - Found {} documents in {}ms", total, tookMs);
+        return searchResponse;
+    }
+
+    /**
+     * Executor converting async responses off the HTTP client's I/O threads
+     */
+    Executor completionExecutor() {
+        return completionExecutor;
+    }
+
+    /**
+     * Identity of an in-flight search: the canonical request under one cache generation
+     */
+    private record SearchFlightKey(SearchCacheKey cacheKey, long generation) {
+    }
+}
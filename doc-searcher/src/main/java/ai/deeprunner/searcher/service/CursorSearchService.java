@@ -0,0 +1,111 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.model.SearchRequest;
+import ai.deeprunner.searcher.model.SearchResponse;
+import ai.deeprunner.searcher.model.SearchResult;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.TotalHits;
+import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pages through searches in cursor mode, which bypasses the search cache: every page of a search
+ * reads the same point in time, and the client carries the position as an opaque cursor.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CursorSearchService {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final SearchQueryBuilder queryBuilder;
+    private final PointInTimeManager pointInTimeManager;
+    private final ObjectMapper objectMapper;
+
+    static boolean isCursorSearch(SearchRequest searchRequest) {
+        return Boolean.TRUE.equals(searchRequest.getCursorMode()) || searchRequest.getCursor() != null;
+    }
+
+    /**
+     * One page of a cursor-mode search. Each page is a search_after on the point in time opened for
+     * the first one, so it costs the same however deep it is, and sees the same snapshot.
+     *
+     * @return the page, with the cursor for the next one unless it is the last
+     * @throws IOException if Elasticsearch operation fails
+     * @throws IllegalArgumentException if the cursor is invalid, belongs to another search, or expired
+     */
+    public SearchResponse search(String tenantId, SearchRequest searchRequest) throws IOException {
+        String documentType = searchRequest.getDocumentType() != null ? searchRequest.getDocumentType() : "document";
+        String aliasName = String.format("%s-%s-read", tenantId, documentType);
+        long fingerprint = SearchCursor.fingerprint(tenantId, documentType, searchRequest);
+        SearchCursor cursor = null;
+        if (searchRequest.getCursor() != null) {
+            cursor = SearchCursor.decode(searchRequest.getCursor(), objectMapper);
+            if (cursor.fingerprint() != fingerprint) {
+                throw new IllegalArgumentException("Cursor belongs to another search");
+            }
+        }
+        String pitId = cursor != null ? cursor.pitId() : pointInTimeManager.acquire(aliasName);
+
+        Query finalQuery = queryBuilder.buildQuery(searchRequest, tenantId);
+        co.elastic.clients.elasticsearch.core.SearchRequest esSearchRequest = queryBuilder
+            .buildCursorSearchRequest(finalQuery, searchRequest, pitId, pointInTimeManager.keepAlive(),
+                cursor != null ? cursor.searchAfterValues() : null)
+            .build();
+
+        long startTime = System.currentTimeMillis();
+        co.elastic.clients.elasticsearch.core.SearchResponse<Map> esResponse;
+        try {
+            esResponse = elasticsearchClient.search(esSearchRequest, Map.class);
+        } catch (ElasticsearchException e) {
+            if (e.status() != 404) throw e;
+            pointInTimeManager.expired(pitId);
+            throw new IllegalArgumentException("Cursor expired");
+        }
+        long tookMs = System.currentTimeMillis() - startTime;
+        pointInTimeManager.used(aliasName, pitId, esResponse.pitId());
+
+        List<SearchResult> results = new ArrayList<>();
+        for (Hit<Map> hit : esResponse.hits().hits()) {
+            results.add(SearchResults.of(hit));
+        }
+
+        int page = cursor != null ? cursor.page() : 0;
+        // only the first page counts hits, in the requested mode
+        TotalHits totalHits = esResponse.hits().total();
+        Long total = cursor != null ? cursor.total() : totalHits != null ? totalHits.value() : null;
+        boolean totalExact = cursor != null ? cursor.totalExact()
+            : totalHits != null && totalHits.relation() == TotalHitsRelation.Eq;
+        String nextCursor = null;
+        List<Hit<Map>> hits = esResponse.hits().hits();
+        if (hits.size() == searchRequest.getSize()) {
+            String nextPitId = esResponse.pitId() != null ? esResponse.pitId() : pitId;
+            nextCursor = SearchCursor.after(nextPitId, hits.get(hits.size() - 1).sort(), fingerprint, page + 1, total,
+                totalExact).encode(objectMapper);
+        }
+
+        SearchResponse searchResponse = new SearchResponse();
+        searchResponse.setResults(results);
+        searchResponse.setTotal(total);
+        searchResponse.setPage(page);
+        searchResponse.setSize(searchRequest.getSize());
+        searchResponse.setTotalPages(SearchResults.totalPages(total, searchRequest.getSize()));
+        searchResponse.setTookMs(tookMs);
+        searchResponse.setNextCursor(nextCursor);
+        searchResponse.setTotalExact(totalExact);
+
+        log.info("Cursor search page {} completed - {} documents in {}ms", page, results.size(), tookMs);
+        return searchResponse;
+    }
+}
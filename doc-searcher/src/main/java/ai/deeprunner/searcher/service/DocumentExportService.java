@@ -0,0 +1,271 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.model.SearchRequest;
+import ai.deeprunner.searcher.model.SearchResult;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams every document matching a search as NDJSON, one search result per line.
+ * <p>
+ * The search runs on a point in time and pages with search_after in batches, so memory stays
+ * bounded by a few batches however large the result set. Batches are written as they arrive; a
+ * slow client blocks the fetching, rather than results piling up. When worker threads are free,
+ * the export is split into slices fetched in parallel, and their batches interleaved.
+ * <p>
+ * At most search.export.max-concurrent exports run at once; further ones are refused before any
+ * point in time is opened.
+ */
+@Service
+@Slf4j
+public class DocumentExportService {
+
+    private static final Batch END_OF_SLICE = new Batch(List.of(), null);
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final SearchQueryBuilder queryBuilder;
+    private final PointInTimeManager pointInTimeManager;
+    private final ObjectWriter resultWriter;
+    private final int maxBatchSize;
+    private final int maxSlices;
+    private final int queuedBatches;
+    private final Semaphore sliceWorkers;
+    private final Semaphore exportPermits;
+    private final ExecutorService sliceExecutor;
+
+    public DocumentExportService(ElasticsearchClient elasticsearchClient,
+                                 SearchQueryBuilder queryBuilder,
+                                 PointInTimeManager pointInTimeManager,
+                                 ObjectMapper objectMapper,
+                                 @Value("${search.export.batch-size:1000}") int maxBatchSize,
+                                 @Value("${search.export.max-slices:4}") int maxSlices,
+                                 @Value("${search.export.queued-batches:4}") int queuedBatches,
+                                 @Value("${search.export.threads:8}") int threads,
+                                 @Value("${search.export.max-concurrent:8}") int maxConcurrent) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.queryBuilder = queryBuilder;
+        this.pointInTimeManager = pointInTimeManager;
+        this.resultWriter = objectMapper.writerFor(SearchResult.class);
+        this.maxBatchSize = maxBatchSize;
+        this.maxSlices = Math.max(1, maxSlices);
+        this.queuedBatches = Math.max(1, queuedBatches);
+        this.sliceWorkers = new Semaphore(threads);
+        this.exportPermits = new Semaphore(maxConcurrent);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sliceExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "search-export-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        sliceExecutor.shutdownNow();
+    }
+
+    /**
+     * Prepare an export, opening its point in time so that failures surface before streaming starts
+     *
+     * @param tenantId tenant ID
+     * @param searchRequest query, filters and sort; size is the batch size, page is ignored
+     * @param slices number of slices requested, at most search.export.max-slices
+     * @throws IOException if Elasticsearch operation fails
+     * @throws RejectedExecutionException if as many exports as allowed are already running
+     */
+    public Export prepare(String tenantId, SearchRequest searchRequest, int slices) throws IOException {
+        if (!exportPermits.tryAcquire()) {
+            throw new RejectedExecutionException("Too many exports in progress");
+        }
+        try {
+            String documentType = searchRequest.getDocumentType() != null ? searchRequest.getDocumentType() : "document";
+            String aliasName = String.format("%s-%s-read", tenantId, documentType);
+            Query query = queryBuilder.buildQuery(searchRequest, tenantId);
+            int batchSize = searchRequest.getSize() != null && searchRequest.getSize() > 0
+                ? Math.min(searchRequest.getSize(), maxBatchSize) : maxBatchSize;
+            String pitId = pointInTimeManager.acquire(aliasName);
+            return new Export(aliasName, query, searchRequest, batchSize, pitId,
+                Math.max(1, Math.min(slices, maxSlices)));
+        } catch (IOException | RuntimeException e) {
+            exportPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * A prepared export, written once
+     */
+    public final class Export {
+        private final String aliasName;
+        private final Query query;
+        private final SearchRequest searchRequest;
+        private final int batchSize;
+        private final String pitId;
+        private final int requestedSlices;
+
+        private Export(String aliasName, Query query, SearchRequest searchRequest, int batchSize, String pitId,
+                       int requestedSlices) {
+            this.aliasName = aliasName;
+            this.query = query;
+            this.searchRequest = searchRequest;
+            this.batchSize = batchSize;
+            this.pitId = pitId;
+            this.requestedSlices = requestedSlices;
+        }
+
+        /**
+         * Write all matching documents to the stream, flushing after each batch; the export's
+         * permit is released when it returns
+         *
+         * @return number of documents written
+         * @throws IOException if Elasticsearch or the client fails; the stream is then incomplete
+         */
+        public long writeTo(OutputStream out) throws IOException {
+            long started = System.currentTimeMillis();
+            int slices = requestedSlices;
+            while (slices > 1 && !sliceWorkers.tryAcquire(slices)) {
+                slices--;
+            }
+            long written;
+            try {
+                written = slices > 1 ? writeSliced(out, slices) : writeSequential(out);
+            } finally {
+                if (slices > 1) {
+                    sliceWorkers.release(slices);
+                }
+                exportPermits.release();
+            }
+            log.info("Exported {} documents from {} in {} slices in {}ms", written, aliasName, slices,
+                System.currentTimeMillis() - started);
+            return written;
+        }
+
+        private long writeSequential(OutputStream out) throws IOException {
+            long written = 0;
+            String currentPitId = pitId;
+            List<FieldValue> searchAfter = null;
+            while (true) {
+                SearchResponse<Map> response = fetch(currentPitId, searchAfter, 0, 1);
+                currentPitId = response.pitId() != null ? response.pitId() : currentPitId;
+                List<Hit<Map>> hits = response.hits().hits();
+                written += write(out, hits);
+                if (hits.size() < batchSize) {
+                    return written;
+                }
+                searchAfter = hits.get(hits.size() - 1).sort();
+            }
+        }
+
+        private long writeSliced(OutputStream out, int slices) throws IOException {
+            BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(queuedBatches);
+            List<Future<?>> workers = new ArrayList<>(slices);
+            for (int slice = 0; slice < slices; slice++) {
+                int sliceId = slice;
+                workers.add(sliceExecutor.submit(() -> fetchSlice(batches, sliceId, slices)));
+            }
+            long written = 0;
+            int finished = 0;
+            try {
+                while (finished < slices) {
+                    Batch batch = batches.take();
+                    if (batch.failure() != null) {
+                        throw batch.failure() instanceof IOException e ? e
+                            : new IOException("Export slice failed", batch.failure());
+                    }
+                    if (batch == END_OF_SLICE) {
+                        finished++;
+                    } else {
+                        written += write(out, batch.hits());
+                    }
+                }
+                return written;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Export interrupted", e);
+            } finally {
+                // stops the other slices when one failed or the client went away
+                workers.forEach(worker -> worker.cancel(true));
+            }
+        }
+
+        /**
+         * Fetch one slice into the queue, blocking while it is full, then mark its end or failure
+         */
+        private void fetchSlice(BlockingQueue<Batch> batches, int sliceId, int slices) {
+            try {
+                try {
+                    String currentPitId = pitId;
+                    List<FieldValue> searchAfter = null;
+                    while (true) {
+                        SearchResponse<Map> response = fetch(currentPitId, searchAfter, sliceId, slices);
+                        currentPitId = response.pitId() != null ? response.pitId() : currentPitId;
+                        List<Hit<Map>> hits = response.hits().hits();
+                        if (!hits.isEmpty()) {
+                            batches.put(new Batch(hits, null));
+                        }
+                        if (hits.size() < batchSize) {
+                            break;
+                        }
+                        searchAfter = hits.get(hits.size() - 1).sort();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    batches.put(new Batch(null, e));
+                    return;
+                }
+                batches.put(END_OF_SLICE);
+            } catch (InterruptedException e) {
+                // cancelled by the writer
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private SearchResponse<Map> fetch(String currentPitId, List<FieldValue> searchAfter, int sliceId, int slices)
+                throws IOException {
+            co.elastic.clients.elasticsearch.core.SearchRequest request = queryBuilder
+                .buildExportSearchRequest(query, searchRequest, batchSize, currentPitId,
+                    pointInTimeManager.keepAlive(), searchAfter, sliceId, slices)
+                .build();
+            SearchResponse<Map> response = elasticsearchClient.search(request, Map.class);
+            pointInTimeManager.used(aliasName, currentPitId, response.pitId());
+            return response;
+        }
+
+        private long write(OutputStream out, List<Hit<Map>> hits) throws IOException {
+            for (Hit<Map> hit : hits) {
+                out.write(resultWriter.writeValueAsBytes(SearchResults.of(hit)));
+                out.write('\n');
+            }
+            out.flush();
+            return hits.size();
+        }
+    }
+
+    /**
+     * Hits fetched by a slice, or the error that ended it
+     */
+    private record Batch(List<Hit<Map>> hits, Exception failure) {
+    }
+}
@@ -0,0 +1,71 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.cache.DocumentIdSource;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.ScrollResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.HitsMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Scrolls through the IDs of a tenant's documents of one type, without their sources
+ */
+@Component
+@Slf4j
+public class DocumentIdScanner implements DocumentIdSource {
+
+    private static final String SCROLL_KEEP_ALIVE = "1m";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final int batchSize;
+
+    public DocumentIdScanner(ElasticsearchClient elasticsearchClient,
+                             @Value("${search.document-filter.scan-batch-size:5000}") int batchSize) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void forEachId(String tenantId, String documentType, Consumer<String> consumer) throws IOException {
+        String alias = String.format("%s-%s-read", tenantId, documentType);
+        SearchResponse<Map> first = elasticsearchClient.search(s -> s
+                .index(alias)
+                .size(batchSize)
+                .sort(o -> o.doc(d -> d))
+                .source(src -> src.fetch(false))
+                .scroll(t -> t.time(SCROLL_KEEP_ALIVE)),
+            Map.class);
+        String scrollId = first.scrollId();
+        try {
+            HitsMetadata<Map> hits = first.hits();
+            while (!hits.hits().isEmpty()) {
+                for (Hit<Map> hit : hits.hits()) {
+                    consumer.accept(hit.id());
+                }
+                String currentScrollId = scrollId;
+                ScrollResponse<Map> next = elasticsearchClient.scroll(r -> r
+                        .scrollId(currentScrollId)
+                        .scroll(t -> t.time(SCROLL_KEEP_ALIVE)),
+                    Map.class);
+                scrollId = next.scrollId();
+                hits = next.hits();
+            }
+        } finally {
+            if (scrollId != null) {
+                String lastScrollId = scrollId;
+                try {
+                    elasticsearchClient.clearScroll(c -> c.scrollId(lastScrollId));
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Failed to clear scroll for {}: {}", alias, e.getMessage());
+                }
+            }
+        }
+    }
+}
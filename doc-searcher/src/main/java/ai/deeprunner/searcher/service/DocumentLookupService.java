@@ -0,0 +1,339 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.cache.DocumentExistenceFilter;
+import ai.deeprunner.searcher.cache.DocumentKey;
+import ai.deeprunner.searcher.cache.DocumentNearCache;
+import ai.deeprunner.searcher.cache.SearchCacheGenerations;
+import ai.deeprunner.searcher.cache.SingleFlight;
+import ai.deeprunner.searcher.model.MultiGetResponse;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Fetches documents by ID with realtime GET / multi-get, single-shard and independent of refresh.
+ * Fetched documents are kept in the off-heap {@link DocumentNearCache}, invalidated per document on
+ * write; IDs that were never indexed, or were recently found missing, are answered by the
+ * {@link DocumentExistenceFilter} without a round trip. Concurrent fetches of the same document
+ * share one.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentLookupService {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final SearchCacheGenerations cacheGenerations;
+    private final DocumentNearCache documentCache;
+    private final DocumentExistenceFilter existenceFilter;
+    private final SingleFlight<DocumentFlightKey, Object> documentFlights = new SingleFlight<>();
+
+    @Value("${search.mget.max-ids:100}")
+    private int maxMultiGetIds;
+
+    /**
+     * Get an active document by ID
+     *
+     * @throws RuntimeException "Document Not Found" if it does not exist or is soft-deleted
+     */
+    public Object getActiveDoc(String tenantId, String documentType, String documentId) {
+        DocumentKey documentKey = new DocumentKey(tenantId, documentType, documentId);
+        Map<String, Object> cached = documentCache.get(documentKey);
+        if (cached != null) {
+            if (isDeleted(cached)) throw new RuntimeException("Document Not Found");
+            return cached;
+        }
+        if (existenceFilter.isKnownMissing(documentKey, true)) throw new RuntimeException("Document Not Found");
+        DocumentFlightKey flightKey = new DocumentFlightKey(tenantId, documentType, documentId,
+            cacheGenerations.current(tenantId, documentType));
+        try {
+            return documentFlights.execute(flightKey, () -> fetchActiveDoc(tenantId, documentType, documentId));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Realtime GET routed to the document's shard; soft-deleted documents are treated as missing
+     */
+    private Object fetchActiveDoc(String tenantId, String documentType, String documentId) throws IOException {
+        DocumentKey documentKey = new DocumentKey(tenantId, documentType, documentId);
+        long documentStamp = documentCache.stamp(documentKey);
+        long missStamp = existenceFilter.stamp(documentKey);
+        String alias = String.format("%s-%s-read", tenantId, documentType);
+
+        GetResponse<Map> response;
+        try {
+            response = elasticsearchClient.get(g -> g.index(alias).id(documentId), Map.class);
+        } catch (ElasticsearchException e) {
+            if (!isMultiIndexAlias(e)) throw e;
+            Map<String, Object> document = fetchActiveDocsBySearch(tenantId, documentType, List.of(documentId))
+                .get(documentId);
+            if (document == null) {
+                // missing or soft-deleted, the search cannot tell
+                existenceFilter.recordMissing(documentKey, true, missStamp);
+                throw new RuntimeException("Document Not Found");
+            }
+            return document;
+        }
+        if (!response.found()) {
+            existenceFilter.recordMissing(documentKey, false, missStamp);
+            throw new RuntimeException("Document Not Found");
+        }
+        // cached even when soft-deleted: the by-id lookups check the flag on every hit
+        cacheDocument(documentKey, response.source(), response.seqNo(), response.primaryTerm(), response.version(),
+            documentStamp);
+        if (isDeleted(response.source())) {
+            existenceFilter.recordMissing(documentKey, true, missStamp);
+            throw new RuntimeException("Document Not Found");
+        }
+        return response.source();
+    }
+
+    /**
+     * Fetch several active documents of one type in a single round trip
+     *
+     * @param tenantId tenant ID
+     * @param documentType document type
+     * @param documentIds document IDs, at most search.mget.max-ids
+     * @return active documents by ID in request order, and the IDs not found or soft-deleted
+     * @throws IOException if Elasticsearch operation fails
+     * @throws IllegalArgumentException if no IDs or too many IDs are requested
+     */
+    public MultiGetResponse multiGetActiveDocs(String tenantId, String documentType, List<String> documentIds)
+            throws IOException {
+        List<String> ids = documentIds == null ? List.of()
+            : documentIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty() || ids.size() > maxMultiGetIds) {
+            throw new IllegalArgumentException("Between 1 and " + maxMultiGetIds + " document IDs are required");
+        }
+
+        Map<String, Map<String, Object>> found = new HashMap<>();
+        List<String> toFetch = new ArrayList<>();
+        for (String id : ids) {
+            DocumentKey documentKey = new DocumentKey(tenantId, documentType, id);
+            Map<String, Object> cached = documentCache.get(documentKey);
+            if (cached == null) {
+                if (!existenceFilter.isKnownMissing(documentKey, true)) {
+                    toFetch.add(id);
+                }
+            } else if (!isDeleted(cached)) {
+                found.put(id, cached);
+            }
+        }
+
+        if (!toFetch.isEmpty()) {
+            DocumentKey firstKey = new DocumentKey(tenantId, documentType, toFetch.get(0));
+            long documentStamp = documentCache.stamp(firstKey);
+            long missStamp = existenceFilter.stamp(firstKey);
+            String alias = String.format("%s-%s-read", tenantId, documentType);
+            MgetResponse<Map> response = elasticsearchClient.mget(m -> m.index(alias).ids(toFetch), Map.class);
+            List<String> failed = new ArrayList<>();
+            for (MultiGetResponseItem<Map> item : response.docs()) {
+                if (item.isFailure()) {
+                    failed.add(item.failure().id());
+                    continue;
+                }
+                GetResult<Map> result = item.result();
+                DocumentKey documentKey = new DocumentKey(tenantId, documentType, result.id());
+                if (!result.found()) {
+                    existenceFilter.recordMissing(documentKey, false, missStamp);
+                    continue;
+                }
+                cacheDocument(documentKey, result.source(), result.seqNo(), result.primaryTerm(), result.version(),
+                    documentStamp);
+                if (isDeleted(result.source())) {
+                    existenceFilter.recordMissing(documentKey, true, missStamp);
+                } else {
+                    found.put(result.id(), result.source());
+                }
+            }
+            if (!failed.isEmpty()) {
+                log.debug("Multi-get failed for {} documents of tenant {}, falling back to search",
+                    failed.size(), tenantId);
+                Map<String, Map<String, Object>> searched = fetchActiveDocsBySearch(tenantId, documentType, failed);
+                for (String id : failed) {
+                    if (!searched.containsKey(id)) {
+                        existenceFilter.recordMissing(new DocumentKey(tenantId, documentType, id), true, missStamp);
+                    }
+                }
+                found.putAll(searched);
+            }
+        }
+
+        Map<String, Map<String, Object>> documents = new LinkedHashMap<>();
+        List<String> notFound = new ArrayList<>();
+        for (String id : ids) {
+            Map<String, Object> document = found.get(id);
+            if (document != null) {
+                documents.put(id, document);
+            } else {
+                notFound.add(id);
+            }
+        }
+        return new MultiGetResponse(documents, notFound);
+    }
+
+    /**
+     * Search-based lookup for when GET cannot be routed, e.g. while the read alias spans the old and
+     * new index during a migration
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> fetchActiveDocsBySearch(String tenantId, String documentType,
+                                                                     List<String> documentIds) throws IOException {
+        DocumentKey firstKey = new DocumentKey(tenantId, documentType, documentIds.get(0));
+        long documentStamp = documentCache.stamp(firstKey);
+        Query finalQuery = Query.of(q -> q
+            .bool(b -> b
+                .filter(f -> f.ids(i -> i.values(documentIds)))
+                .filter(f -> f.term(t -> t.field("is_deleted").value(false)))
+            ));
+
+        String alias = String.format("%s-%s-read", tenantId, documentType);
+
+        log.trace("Final query for tenant {}: {}", tenantId, finalQuery);
+        co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder =
+                new co.elastic.clients.elasticsearch.core.SearchRequest.Builder()
+                        .query(finalQuery)
+                        .index(alias)
+                        .from(0)
+                        .size(documentIds.size())
+                        .seqNoPrimaryTerm(true)
+                        .version(true);
+
+        co.elastic.clients.elasticsearch.core.SearchResponse<Map> esResponse =
+                elasticsearchClient.search(builder.build(), Map.class);
+        Map<String, Map<String, Object>> documents = new HashMap<>();
+        for (Hit<Map> hit : esResponse.hits().hits()) {
+            cacheDocument(new DocumentKey(tenantId, documentType, hit.id()), hit.source(), hit.seqNo(),
+                hit.primaryTerm(), hit.version(), documentStamp);
+            documents.put(hit.id(), hit.source());
+        }
+        return documents;
+    }
+
+    private static boolean isDeleted(Map<?, ?> source) {
+        return source != null && Boolean.TRUE.equals(source.get("is_deleted"));
+    }
+
+    /**
+     * GET and multi-get need the alias to resolve to exactly one index
+     */
+    private static boolean isMultiIndexAlias(ElasticsearchException e) {
+        return e.error() != null && "illegal_argument_exception".equals(e.error().type());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void cacheDocument(DocumentKey key, Map source, Long seqNo, Long primaryTerm, Long version, long stamp) {
+        if (seqNo != null && primaryTerm != null) {
+            documentCache.put(key, source, seqNo, primaryTerm, version != null ? version : -1, stamp);
+        }
+    }
+
+    /**
+     * Get a document by ID
+     *
+     * @param tenantId tenant ID
+     * @param documentId document ID
+     * @param documentType document type
+     * @return document as map, or null if not found
+     * @throws IOException if Elasticsearch operation fails
+     */
+    public Map<String, Object> getDocumentById(String tenantId, String documentId, String documentType) throws IOException {
+        if (documentType == null || documentType.trim().isEmpty()) {
+            documentType = "document";
+        }
+        
+        DocumentKey documentKey = new DocumentKey(tenantId, documentType, documentId);
+        Map<String, Object> cached = documentCache.get(documentKey);
+        if (cached != null) {
+            return cached;
+        }
+        if (existenceFilter.isKnownMissing(documentKey, false)) {
+            log.debug("Document known missing: {} for tenant: {}", documentId, tenantId);
+            throw new RuntimeException("Document Not Found");
+        }
+        long documentStamp = documentCache.stamp(documentKey);
+        long missStamp = existenceFilter.stamp(documentKey);
+
+        // Use alias identified by tenantId
+        String aliasName = String.format("%s-%s-read", tenantId, documentType);
+        
+        log.info("Fetching document {} from index: {} for tenant: {}", documentId, aliasName, tenantId);
+        
+        try {
+            co.elastic.clients.elasticsearch.core.GetRequest getRequest = 
+                co.elastic.clients.elasticsearch.core.GetRequest.of(g -> g
+                .index(aliasName)
+                .id(documentId)
+            );
+            
+            var response = elasticsearchClient.get(getRequest, Map.class);
+            
+            if (response.found()) {
+                Map<String, Object> document = response.source();
+                cacheDocument(documentKey, document, response.seqNo(), response.primaryTerm(), response.version(),
+                    documentStamp);
+                log.debug("Document found: {}", documentId);
+                return document;
+            } else {
+                log.warn("Document not found: {} in index: {}", documentId, aliasName);
+                existenceFilter.recordMissing(documentKey, false, missStamp);
+                throw new RuntimeException("Document Not Found");
+            }
+        } catch (Exception e) {
+            log.error("Error fetching document {} from index {}", documentId, aliasName, e);
+            throw new RuntimeException("Document Not Found");
+        }
+    }
+
+    /**
+     * Overload: get document by alias index
+     */
+    public Map<String, Object> getDocumentById(String tenantId, String documentId, String documentType, String alias) throws IOException {
+        if (alias != null && !alias.trim().isEmpty()) {
+            String indexName = alias.trim();
+            log.info("Fetching document {} from alias index: {} for tenant: {}", documentId, indexName, tenantId);
+            try {
+                co.elastic.clients.elasticsearch.core.GetRequest getRequest =
+                    co.elastic.clients.elasticsearch.core.GetRequest.of(g -> g
+                    .index(indexName)
+                    .id(documentId)
+                );
+
+                var response = elasticsearchClient.get(getRequest, Map.class);
+
+                if (response.found()) {
+                    return response.source();
+                }
+                return null;
+            } catch (Exception e) {
+                throw new IOException("Failed to fetch document by alias", e);
+            }
+        }
+        return getDocumentById(tenantId, documentId, documentType);
+    }
+
+    /**
+     * Identity of an in-flight document fetch under one cache generation
+     */
+    private record DocumentFlightKey(String tenantId, String documentType, String documentId, long generation) {
+    }
+}
@@ -1,34 +1,37 @@
 package ai.deeprunner.searcher.service;
 
 import ai.deeprunner.searcher.cache.InMemorySearchCache;
-import org.springframework.beans.factory.annotation.Value;
+import ai.deeprunner.searcher.cache.SearchResponseCodec;
+import ai.deeprunner.searcher.cache.SerializedSearchResponse;
+import ai.deeprunner.searcher.model.AggregationResult;
 import ai.deeprunner.searcher.model.SearchRequest;
-import ai.deeprunner.searcher.model.SearchResult;
 import ai.deeprunner.searcher.model.SearchResponse;
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch._types.query_dsl.Query;
-import co.elastic.clients.elasticsearch.core.search.Hit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Service for searching documents in Elasticsearch
  * Supports dynamic index resolution based on tenant strategy
+ * Routes each search to the path that answers it: single-type, federated or cursor, with facets added
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DocumentSearchService {
     
-    private final ElasticsearchClient elasticsearchClient;
-    private final SearchQueryBuilder queryBuilder;
+    private final CachedSearchService cachedSearchService;
+    private final FederatedSearchService federatedSearchService;
+    private final CursorSearchService cursorSearchService;
+    private final FacetSearchService facetSearchService;
     private final InMemorySearchCache searchCache;
+    private final SearchResponseCodec responseCodec;
     
     @Value("${elasticsearch.index.shared-prefix:documents}")
     private String sharedIndexPrefix;
@@ -42,179 +45,113 @@ public class DocumentSearchService {
      * @throws IOException if Elasticsearch operation fails
      */
     public SearchResponse searchDocuments(String tenantId, SearchRequest searchRequest) throws IOException {
-        String documentType = searchRequest.getDocumentType() != null ? searchRequest.getDocumentType() : "document";
-        
-        // Use alias identified by tenantId
-
-        List<String> searchFields = new ArrayList<>();
-
-        Query finalQuery = searchFields.isEmpty()
-            ? queryBuilder.buildQuery(searchRequest, tenantId)
-            : queryBuilder.buildQueryWithFields(searchRequest, tenantId, searchFields);
-
-        String aliasName = String.format("%s-%s-read", tenantId, documentType);
-        log.info("Final query for tenant {}: {}", tenantId, finalQuery);
-        co.elastic.clients.elasticsearch.core.SearchRequest.Builder esSearchRequestBuilder =
-            queryBuilder.buildSearchRequest(finalQuery, searchRequest).index(aliasName);
-
-        // Cache lookup
-        String cacheKey = buildCacheKey(tenantId, searchRequest);
-        SearchResponse cached = searchCache.get(cacheKey);
-        if (cached != null) {
-            return cached;
+        if (FederatedSearch.isFederated(searchRequest)) {
+            return federatedSearchService.search(tenantId, searchRequest);
         }
-        
-        // Execute search
-        long startTime = System.currentTimeMillis();
-        co.elastic.clients.elasticsearch.core.SearchResponse<Map> esResponse = 
-            elasticsearchClient.search(esSearchRequestBuilder.build(), Map.class);
-
-        long tookMs = System.currentTimeMillis() - startTime;
-        
-        // Convert results
-        List<SearchResult> results = new ArrayList<>();
-        for (Hit<Map> hit : esResponse.hits().hits()) {
-            SearchResult result = new SearchResult();
-            result.setDocumentId(hit.id());
-            result.setScore(hit.score());
-            result.setSource(hit.source());
-            result.setIndex(hit.index());
-            results.add(result);
-        }
-        
-        long total = esResponse.hits().total().value();
-        int totalPages = (int) Math.ceil((double) total / searchRequest.getSize());
-        
-        SearchResponse searchResponse = new SearchResponse();
-        searchResponse.setResults(results);
-        searchResponse.setTotal(total);
-        searchResponse.setPage(searchRequest.getPage());
-        searchResponse.setSize(searchRequest.getSize());
-        searchResponse.setTotalPages(totalPages);
-        searchResponse.setTookMs(tookMs);
-        
-        log.info("Search completed - Found {} documents in {}ms", total, tookMs);
-
-        if (total < 50) {
-            searchCache.put(cacheKey, searchResponse);
+        SearchResponse response = CursorSearchService.isCursorSearch(searchRequest)
+            ? cursorSearchService.search(tenantId, searchRequest)
+            : searchCache.responseOf(cachedSearchService.search(tenantId, searchRequest));
+        if (FacetSearchService.hasAggregations(searchRequest)) {
+            return withAggregations(response, facetSearchService.aggregate(tenantId, searchRequest));
         }
-        
-        return searchResponse;
+        return response;
     }
 
-    public Object getActiveDoc(String tenantId, String documentType, String documentId) {
-        Query finalQuery = Query.of(q -> q
-            .bool(b -> b
-                .must(m -> m.term(t -> t.field("_id").value(documentId)))
-                .filter(f -> f.term(t -> t.field("is_deleted").value(false)))
-            ));
-
-        String alias = String.format("%s-%s-read", tenantId, documentType);
-
-        log.info("Final query for tenant {}: {}", tenantId, finalQuery);
-        co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder =
-                new co.elastic.clients.elasticsearch.core.SearchRequest.Builder()
-                        .query(finalQuery)
-                        .index(alias)
-                        .from(0)
-                        .size(1);
-
-        try {
-            co.elastic.clients.elasticsearch.core.SearchResponse<Map> esResponse =
-                    elasticsearchClient.search(builder.build(), Map.class);
-            if (esResponse.hits().hits().isEmpty()) throw  new RuntimeException("Document Not Found");
-            return esResponse.hits().hits().get(0).source();
-        } catch (RuntimeException e) {
-            throw e;
-        }  catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * Search documents by query, returning the response already rendered as JSON.
+     * In serialized cache mode a hit is served straight from the cached bytes.
+     *
+     * @param tenantId tenant ID
+     * @param searchRequest search request with query, filters, pagination
+     * @return search response as JSON, possibly gzip-compressed
+     * @throws IOException if Elasticsearch operation fails
+     */
+    public SerializedSearchResponse searchDocumentsSerialized(String tenantId, SearchRequest searchRequest)
+            throws IOException {
+        if (FederatedSearch.isFederated(searchRequest) || CursorSearchService.isCursorSearch(searchRequest)
+            || FacetSearchService.hasAggregations(searchRequest)) {
+            return responseCodec.encode(searchDocuments(tenantId, searchRequest));
         }
+        return searchCache.serializedOf(cachedSearchService.search(tenantId, searchRequest));
     }
 
     /**
-     * Get a document by ID
+     * Search documents by query without blocking: cache hits complete immediately, misses when
+     * Elasticsearch answers. Caching, coalescing and error fallback are those of
+     * {@link #searchDocuments}; cursor-mode pages are searched on the calling thread.
      *
      * @param tenantId tenant ID
-     * @param documentId document ID
-     * @param documentType document type
-     * @return document as map, or null if not found
-     * @throws IOException if Elasticsearch operation fails
+     * @param searchRequest search request with query, filters, pagination
+     * @return future search response, failing with the IOException or ElasticsearchException of the search
      */
-    public Map<String, Object> getDocumentById(String tenantId, String documentId, String documentType) throws IOException {
-        if (documentType == null || documentType.trim().isEmpty()) {
-            documentType = "document";
+    public CompletableFuture<SearchResponse> searchDocumentsAsync(String tenantId, SearchRequest searchRequest) {
+        if (FederatedSearch.isFederated(searchRequest)) {
+            return federatedSearchService.searchAsync(tenantId, searchRequest);
         }
-        
-        // Use alias identified by tenantId
-        String aliasName = String.format("%s-%s-read", tenantId, documentType);
-        
-        log.info("Fetching document {} from index: {} for tenant: {}", documentId, aliasName, tenantId);
-        
-        try {
-            co.elastic.clients.elasticsearch.core.GetRequest getRequest = 
-                co.elastic.clients.elasticsearch.core.GetRequest.of(g -> g
-                .index(aliasName)
-                .id(documentId)
-            );
-            
-            var response = elasticsearchClient.get(getRequest, Map.class);
-            
-            if (response.found()) {
-                Map<String, Object> document = response.source();
-                log.debug("Document found: {}", documentId);
-                return document;
-            } else {
-                log.warn("Document not found: {} in index: {}", documentId, aliasName);
-                throw new RuntimeException("Document Not Found");
+        CompletableFuture<SearchResponse> response;
+        if (CursorSearchService.isCursorSearch(searchRequest)) {
+            try {
+                response = CompletableFuture.completedFuture(cursorSearchService.search(tenantId, searchRequest));
+            } catch (IOException | RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
             }
-        } catch (Exception e) {
-            log.error("Error fetching document {} from index {}", documentId, aliasName, e);
-            throw new RuntimeException("Document Not Found");
+        } else {
+            response = cachedSearchService.searchAsync(tenantId, searchRequest).thenApply(cached -> {
+                try {
+                    return searchCache.responseOf(cached);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        }
+        if (FacetSearchService.hasAggregations(searchRequest)) {
+            // hits and facets are searched concurrently
+            return response.thenCombine(facetSearchService.aggregateAsync(tenantId, searchRequest),
+                DocumentSearchService::withAggregations);
         }
+        return response;
     }
 
     /**
-     * Overload: get document by alias index
+     * Asynchronous {@link #searchDocumentsSerialized}
+     *
+     * @param tenantId tenant ID
+     * @param searchRequest search request with query, filters, pagination
+     * @return future search response as JSON, possibly gzip-compressed
      */
-    public Map<String, Object> getDocumentById(String tenantId, String documentId, String documentType, String alias) throws IOException {
-        if (alias != null && !alias.trim().isEmpty()) {
-            String indexName = alias.trim();
-            log.info("Fetching document {} from alias index: {} for tenant: {}", documentId, indexName, tenantId);
-            try {
-                co.elastic.clients.elasticsearch.core.GetRequest getRequest =
-                    co.elastic.clients.elasticsearch.core.GetRequest.of(g -> g
-                    .index(indexName)
-                    .id(documentId)
-                );
-
-                var response = elasticsearchClient.get(getRequest, Map.class);
-
-                if (response.found()) {
-                    return response.source();
+    public CompletableFuture<SerializedSearchResponse> searchDocumentsSerializedAsync(String tenantId,
+                                                                                      SearchRequest searchRequest) {
+        if (FederatedSearch.isFederated(searchRequest) || CursorSearchService.isCursorSearch(searchRequest)
+            || FacetSearchService.hasAggregations(searchRequest)) {
+            return searchDocumentsAsync(tenantId, searchRequest).thenApply(response -> {
+                try {
+                    return responseCodec.encode(response);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
                 }
-                return null;
-            } catch (Exception e) {
-                throw new IOException("Failed to fetch document by alias", e);
-            }
+            });
         }
-        return getDocumentById(tenantId, documentId, documentType);
+        return cachedSearchService.searchAsync(tenantId, searchRequest).thenApply(cached -> {
+            try {
+                return searchCache.serializedOf(cached);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
     }
-    
-    private String buildCacheKey(String tenantId, SearchRequest req) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(tenantId == null ? "" : tenantId).append('|');
-        sb.append(req.getDocumentType() == null ? "" : req.getDocumentType()).append('|');
-        sb.append(req.getQuery() == null ? "" : req.getQuery()).append('|');
-        sb.append(req.getPage()).append('|').append(req.getSize()).append('|');
-        if (req.getSort() != null) {
-            for (String s : req.getSort()) sb.append(s).append(',');
-        }
-        sb.append('|');
-        if (req.getFilters() != null) {
-            req.getFilters().entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .forEach(e -> sb.append(e.getKey()).append('=').append(String.valueOf(e.getValue())).append(','));
-        }
-        return sb.toString();
+
+    /**
+     * @return whether callers should prefer {@link #searchDocumentsSerialized}
+     */
+    public boolean isSerializedResponses() {
+        return searchCache.isSerialized();
+    }
+
+    /**
+     * A copy of the response with the facets added; the response itself may be a cached one
+     */
+    private static SearchResponse withAggregations(SearchResponse response,
+                                                   Map<String, AggregationResult> aggregations) {
+        return response.toBuilder().aggregations(aggregations).build();
     }
 }
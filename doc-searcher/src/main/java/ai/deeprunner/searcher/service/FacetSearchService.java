@@ -0,0 +1,167 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.cache.FacetCache;
+import ai.deeprunner.searcher.cache.FacetCacheKey;
+import ai.deeprunner.searcher.cache.SingleFlight;
+import ai.deeprunner.searcher.model.AggregationRequest;
+import ai.deeprunner.searcher.model.AggregationResult;
+import ai.deeprunner.searcher.model.SearchRequest;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.DoubleTermsBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.HistogramBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.LongTermsBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.RangeBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Computes the facets of searches: a size=0 search over the same documents as the hits, answered
+ * from the {@link FacetCache} when it can be, and from Elasticsearch's shard request cache when
+ * only the searcher's cache missed. Concurrent identical facet searches share one round trip.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FacetSearchService {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final SearchQueryBuilder queryBuilder;
+    private final SearchBatcher searchBatcher;
+    private final FacetCache facetCache;
+    private final SingleFlight<FacetFlightKey, Map<String, AggregationResult>> facetFlights = new SingleFlight<>();
+
+    static boolean hasAggregations(SearchRequest searchRequest) {
+        return searchRequest.getAggregations() != null && !searchRequest.getAggregations().isEmpty();
+    }
+
+    /**
+     * @return the facets of the search, by name
+     * @throws IOException if Elasticsearch operation fails
+     * @throws IllegalArgumentException if an aggregation is incomplete or of an unknown type
+     */
+    public Map<String, AggregationResult> aggregate(String tenantId, SearchRequest searchRequest) throws IOException {
+        String documentType = documentType(searchRequest);
+        FacetCacheKey cacheKey = FacetCacheKey.of(tenantId, documentType, searchRequest);
+        Map<String, AggregationResult> cached = facetCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        // captured before searching, as for hit pages, so a write landing mid-search is not cached over
+        long generation = facetCache.currentGeneration(cacheKey);
+        co.elastic.clients.elasticsearch.core.SearchRequest search = buildFacetSearch(tenantId, documentType,
+            searchRequest);
+        return facetFlights.execute(new FacetFlightKey(cacheKey, generation), () -> {
+            Map<String, AggregationResult> aggregations =
+                toAggregations(elasticsearchClient.search(search, Map.class), searchRequest);
+            facetCache.put(cacheKey, aggregations, generation);
+            return aggregations;
+        });
+    }
+
+    /**
+     * Asynchronous {@link #aggregate}, sent through the search batcher
+     *
+     * @return future facets, failing with the IOException or ElasticsearchException of the search
+     */
+    public CompletableFuture<Map<String, AggregationResult>> aggregateAsync(String tenantId,
+                                                                            SearchRequest searchRequest) {
+        String documentType = documentType(searchRequest);
+        FacetCacheKey cacheKey = FacetCacheKey.of(tenantId, documentType, searchRequest);
+        Map<String, AggregationResult> cached = facetCache.get(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = facetCache.currentGeneration(cacheKey);
+        co.elastic.clients.elasticsearch.core.SearchRequest search;
+        try {
+            search = buildFacetSearch(tenantId, documentType, searchRequest);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        // converting buckets is cheap enough to do on the client's I/O thread
+        return facetFlights.executeAsync(new FacetFlightKey(cacheKey, generation),
+            () -> searchBatcher.search(search).thenApply(response -> {
+                Map<String, AggregationResult> aggregations = toAggregations(response, searchRequest);
+                facetCache.put(cacheKey, aggregations, generation);
+                return aggregations;
+            }));
+    }
+
+    private co.elastic.clients.elasticsearch.core.SearchRequest buildFacetSearch(String tenantId, String documentType,
+                                                                                SearchRequest searchRequest) {
+        String aliasName = String.format("%s-%s-read", tenantId, documentType);
+        return queryBuilder.buildFacetSearchRequest(queryBuilder.buildQuery(searchRequest, tenantId), searchRequest)
+            .index(aliasName)
+            .build();
+    }
+
+    private static String documentType(SearchRequest searchRequest) {
+        return searchRequest.getDocumentType() != null ? searchRequest.getDocumentType() : "document";
+    }
+
+    private static Map<String, AggregationResult> toAggregations(ResponseBody<Map> response,
+                                                                 SearchRequest searchRequest) {
+        Map<String, AggregationResult> aggregations = new LinkedHashMap<>();
+        for (Map.Entry<String, AggregationRequest> entry : searchRequest.getAggregations().entrySet()) {
+            Aggregate aggregate = response.aggregations().get(entry.getKey());
+            String type = entry.getValue().getType().trim().toLowerCase();
+            aggregations.put(entry.getKey(), aggregate == null
+                ? AggregationResult.builder().type(type).buckets(List.of()).build()
+                : toAggregation(type, aggregate));
+        }
+        return aggregations;
+    }
+
+    private static AggregationResult toAggregation(String type, Aggregate aggregate) {
+        AggregationResult.AggregationResultBuilder result = AggregationResult.builder().type(type);
+        List<AggregationResult.Bucket> buckets = new ArrayList<>();
+        if (aggregate.isSterms()) {
+            for (StringTermsBucket bucket : aggregate.sterms().buckets().array()) {
+                buckets.add(bucket(bucket.key().stringValue(), null, null, bucket.docCount()));
+            }
+            result.otherDocCount(aggregate.sterms().sumOtherDocCount());
+        } else if (aggregate.isLterms()) {
+            for (LongTermsBucket bucket : aggregate.lterms().buckets().array()) {
+                // dates and booleans come back as numbers with a readable form alongside
+                Object key = bucket.keyAsString() != null ? bucket.keyAsString() : bucket.key();
+                buckets.add(bucket(key, null, null, bucket.docCount()));
+            }
+            result.otherDocCount(aggregate.lterms().sumOtherDocCount());
+        } else if (aggregate.isDterms()) {
+            for (DoubleTermsBucket bucket : aggregate.dterms().buckets().array()) {
+                buckets.add(bucket(bucket.key(), null, null, bucket.docCount()));
+            }
+            result.otherDocCount(aggregate.dterms().sumOtherDocCount());
+        } else if (aggregate.isRange()) {
+            for (RangeBucket bucket : aggregate.range().buckets().array()) {
+                buckets.add(bucket(bucket.key(), bucket.from(), bucket.to(), bucket.docCount()));
+            }
+        } else if (aggregate.isHistogram()) {
+            for (HistogramBucket bucket : aggregate.histogram().buckets().array()) {
+                buckets.add(bucket(bucket.key(), null, null, bucket.docCount()));
+            }
+        } else if (aggregate.isCardinality()) {
+            return result.value(aggregate.cardinality().value()).build();
+        }
+        // an unmapped field has no buckets
+        return result.buckets(buckets).build();
+    }
+
+    private static AggregationResult.Bucket bucket(Object key, Double from, Double to, long docCount) {
+        return AggregationResult.Bucket.builder().key(key).from(from).to(to).docCount(docCount).build();
+    }
+
+    private record FacetFlightKey(FacetCacheKey cacheKey, long generation) {
+    }
+}
@@ -0,0 +1,268 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.cache.CachedSearchResponse;
+import ai.deeprunner.searcher.cache.SearchCacheKey;
+import ai.deeprunner.searcher.model.SearchRequest;
+import ai.deeprunner.searcher.model.SearchResponse;
+import ai.deeprunner.searcher.model.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A search across several document types of a tenant, answered as one ranked page.
+ * <p>
+ * Each type is searched as an ordinary single-type search for the first hits the merged page can
+ * draw on, at most perTypeTopK, so it is cached, and invalidated, with that type's other searches.
+ * The types not answered from the cache are searched together in one multi-search round trip. The
+ * hits are merged by boosted score, or by their sort values for a sorted search, and the page is cut
+ * from the merged ranking; totals are reported per type and summed.
+ */
+final class FederatedSearch {
+
+    /**
+     * A type to search in Elasticsearch: its single-type request and cache entry, and the cache
+     * generation captured before searching
+     */
+    record Part(String documentType, SearchRequest request, SearchCacheKey cacheKey, long generation,
+                CachedSearchResponse cached, co.elastic.clients.elasticsearch.core.SearchRequest search) {
+    }
+
+    private final SearchRequest request;
+    private final List<String> documentTypes;
+    private final int window;
+    private final Map<String, SearchResponse> responses = new HashMap<>();
+    private final List<Part> misses = new ArrayList<>();
+    private final long started = System.currentTimeMillis();
+
+    private FederatedSearch(SearchRequest request, List<String> documentTypes, int window) {
+        this.request = request;
+        this.documentTypes = documentTypes;
+        this.window = window;
+    }
+
+    static boolean isFederated(SearchRequest searchRequest) {
+        return searchRequest.getDocumentTypes() != null && !searchRequest.getDocumentTypes().isEmpty();
+    }
+
+    /**
+     * @param maxTypes most document types one search may span
+     * @param maxWindow most hits one type may contribute; bounds how deep a federated search can page
+     * @throws IllegalArgumentException if the search spans too many types, pages too deep, uses a cursor
+     * or aggregations
+     */
+    static FederatedSearch of(SearchRequest searchRequest, int maxTypes, int maxWindow) {
+        if (Boolean.TRUE.equals(searchRequest.getCursorMode()) || searchRequest.getCursor() != null) {
+            throw new IllegalArgumentException("Cursor mode is not supported across document types");
+        }
+        if (searchRequest.getAggregations() != null && !searchRequest.getAggregations().isEmpty()) {
+            throw new IllegalArgumentException("Aggregations are not supported across document types");
+        }
+        Set<String> types = new LinkedHashSet<>();
+        for (String type : searchRequest.getDocumentTypes()) {
+            if (type != null && !type.isBlank()) {
+                types.add(type.trim());
+            }
+        }
+        if (types.isEmpty() || types.size() > maxTypes) {
+            throw new IllegalArgumentException("documentTypes must name between 1 and " + maxTypes + " types");
+        }
+        int window = (searchRequest.getPage() + 1) * searchRequest.getSize();
+        if (searchRequest.getPerTypeTopK() != null && searchRequest.getPerTypeTopK() > 0) {
+            window = Math.min(window, searchRequest.getPerTypeTopK());
+        }
+        if (window > maxWindow) {
+            throw new IllegalArgumentException("Page too deep for a search across document types: at most "
+                + maxWindow + " hits per type");
+        }
+        return new FederatedSearch(searchRequest, new ArrayList<>(types), window);
+    }
+
+    List<String> documentTypes() {
+        return documentTypes;
+    }
+
+    /**
+     * @return the single-type search of a type: the same query, filters, sort and projection, for
+     * the first hits the merged page can draw on
+     */
+    SearchRequest partRequest(String documentType) {
+        return SearchRequest.builder()
+            .query(request.getQuery())
+            .fields(request.getFields())
+            .documentType(documentType)
+            .page(0)
+            .size(window)
+            .sort(request.getSort())
+            .filters(request.getFilters())
+            .includes(request.getIncludes())
+            .excludes(request.getExcludes())
+            .docValueFields(request.getDocValueFields())
+            .totalHits(request.getTotalHits())
+            .terminateAfter(request.getTerminateAfter())
+            .build();
+    }
+
+    void resolve(String documentType, SearchResponse response) {
+        responses.put(documentType, response);
+    }
+
+    void miss(Part part) {
+        misses.add(part);
+    }
+
+    /**
+     * @return the types left to search in Elasticsearch, in request order
+     */
+    List<Part> misses() {
+        return misses;
+    }
+
+    /**
+     * Merge the responses of every type into the requested page
+     */
+    SearchResponse merge() {
+        List<Ranked> ranked = new ArrayList<>();
+        Map<String, Long> typeTotals = new LinkedHashMap<>();
+        Long total = 0L;
+        boolean totalExact = true;
+        Boolean terminatedEarly = null;
+        for (int typeIndex = 0; typeIndex < documentTypes.size(); typeIndex++) {
+            String documentType = documentTypes.get(typeIndex);
+            SearchResponse response = responses.get(documentType);
+            typeTotals.put(documentType, response.getTotal());
+            total = total == null || response.getTotal() == null ? null : total + response.getTotal();
+            totalExact &= Boolean.TRUE.equals(response.getTotalExact());
+            if (response.getTerminatedEarly() != null) {
+                terminatedEarly = Boolean.TRUE.equals(terminatedEarly) || response.getTerminatedEarly();
+            }
+            double boost = boost(documentType);
+            List<SearchResult> results = response.getResults() != null ? response.getResults() : List.of();
+            for (int rank = 0; rank < results.size(); rank++) {
+                ranked.add(new Ranked(boosted(results.get(rank), documentType, boost), typeIndex, rank));
+            }
+        }
+        ranked.sort(comparator());
+
+        int from = Math.min(request.getPage() * request.getSize(), ranked.size());
+        int to = Math.min(from + request.getSize(), ranked.size());
+        List<SearchResult> page = new ArrayList<>(to - from);
+        for (Ranked result : ranked.subList(from, to)) {
+            page.add(result.result());
+        }
+
+        SearchResponse searchResponse = new SearchResponse();
+        searchResponse.setResults(page);
+        searchResponse.setTotal(total);
+        searchResponse.setPage(request.getPage());
+        searchResponse.setSize(request.getSize());
+        searchResponse.setTotalPages(total != null ? (int) Math.ceil((double) total / request.getSize()) : null);
+        searchResponse.setTookMs(System.currentTimeMillis() - started);
+        searchResponse.setTotalExact(totalExact);
+        searchResponse.setTerminatedEarly(terminatedEarly);
+        searchResponse.setTypeTotals(typeTotals);
+        return searchResponse;
+    }
+
+    private double boost(String documentType) {
+        Double boost = request.getTypeBoosts() != null ? request.getTypeBoosts().get(documentType) : null;
+        return boost != null && boost >= 0 ? boost : 1.0;
+    }
+
+    private SearchResult boosted(SearchResult result, String documentType, double boost) {
+        List<Object> sort = result.getSort();
+        if (sort != null && boost != 1.0) {
+            // a sort on _score ranks by the boosted score too
+            sort = new ArrayList<>(sort);
+            List<String> sortFields = request.getSort();
+            for (int i = 0; i < sort.size() && i < sortFields.size(); i++) {
+                if (sortField(sortFields.get(i)).equals("_score") && sort.get(i) instanceof Number score) {
+                    sort.set(i, score.doubleValue() * boost);
+                }
+            }
+        }
+        return SearchResult.builder()
+            .documentId(result.getDocumentId())
+            .score(result.getScore() != null ? result.getScore() * boost : null)
+            .source(result.getSource())
+            .index(result.getIndex())
+            .fields(result.getFields())
+            .sort(sort)
+            .documentType(documentType)
+            .build();
+    }
+
+    /**
+     * By boosted score, or by sort values in the requested orders, missing values last; ties keep
+     * the order of the types in the request, then each type's own ranking
+     */
+    private Comparator<Ranked> comparator() {
+        Comparator<Ranked> order;
+        List<String> sortFields = request.getSort();
+        if (sortFields == null || sortFields.isEmpty()) {
+            order = (a, b) -> compareNullsLast(b.result().getScore(), a.result().getScore(), false);
+        } else {
+            order = (a, b) -> {
+                List<Object> left = a.result().getSort();
+                List<Object> right = b.result().getSort();
+                for (int i = 0; i < sortFields.size(); i++) {
+                    boolean descending = isDescending(sortFields.get(i));
+                    Object x = left != null && i < left.size() ? left.get(i) : null;
+                    Object y = right != null && i < right.size() ? right.get(i) : null;
+                    int compared = descending ? compareNullsLast(y, x, true) : compareNullsLast(x, y, false);
+                    if (compared != 0) {
+                        return compared;
+                    }
+                }
+                return 0;
+            };
+        }
+        return order.thenComparingInt(Ranked::typeIndex).thenComparingInt(Ranked::rank);
+    }
+
+    /**
+     * @param swapped whether the arguments are swapped for a descending order, where nulls still go last
+     */
+    private static int compareNullsLast(Object x, Object y, boolean swapped) {
+        if (x == null || y == null) {
+            int nullsLast = x == null ? (y == null ? 0 : 1) : -1;
+            return swapped ? -nullsLast : nullsLast;
+        }
+        return compareValues(x, y);
+    }
+
+    private static int compareValues(Object x, Object y) {
+        if (x instanceof Number a && y instanceof Number b) {
+            if (isIntegral(a) && isIntegral(b)) {
+                return Long.compare(a.longValue(), b.longValue());
+            }
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        if (x instanceof Boolean a && y instanceof Boolean b) {
+            return Boolean.compare(a, b);
+        }
+        return x.toString().compareTo(y.toString());
+    }
+
+    private static boolean isIntegral(Number value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    private static String sortField(String sort) {
+        return sort.split(":")[0];
+    }
+
+    private static boolean isDescending(String sort) {
+        String[] parts = sort.split(":");
+        return parts.length > 1 && "desc".equalsIgnoreCase(parts[1]);
+    }
+
+    private record Ranked(SearchResult result, int typeIndex, int rank) {
+    }
+}
@@ -0,0 +1,192 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.cache.CachedSearchResponse;
+import ai.deeprunner.searcher.cache.InMemorySearchCache;
+import ai.deeprunner.searcher.cache.SearchCacheKey;
+import ai.deeprunner.searcher.model.SearchRequest;
+import ai.deeprunner.searcher.model.SearchResponse;
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.MsearchRequest;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.RequestItem;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Searches across several document types of a tenant, one multi-search round trip for the types
+ * not cached, their hits merged into one ranked page; see {@link FederatedSearch}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FederatedSearchService {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
+    private final InMemorySearchCache searchCache;
+    private final CachedSearchService cachedSearchService;
+
+    @Value("${search.federated.max-types:10}")
+    private int maxFederatedTypes;
+
+    @Value("${search.federated.max-window:1000}")
+    private int maxFederatedWindow;
+
+    /**
+     * Search the request's document types together: each type is looked up in the cache as its own
+     * single-type search, the rest searched in one multi-search
+     *
+     * @return one ranked page across the types, with totals by type
+     * @throws IOException if Elasticsearch operation fails for a type with nothing cached
+     * @throws IllegalArgumentException if the search spans too many types, pages too deep, uses a cursor
+     * or aggregations
+     */
+    public SearchResponse search(String tenantId, SearchRequest searchRequest) throws IOException {
+        FederatedSearch federated = planFederatedSearch(tenantId, searchRequest);
+        if (federated.misses().isEmpty()) {
+            return federated.merge();
+        }
+        long startTime = System.currentTimeMillis();
+        MsearchResponse<Map> response;
+        try {
+            response = elasticsearchClient.msearch(toMsearchRequest(federated), Map.class);
+        } catch (IOException | ElasticsearchException e) {
+            fallBackToCached(tenantId, federated, e);
+            return federated.merge();
+        }
+        completeFederatedSearch(tenantId, federated, response, System.currentTimeMillis() - startTime);
+        return federated.merge();
+    }
+
+    /**
+     * Asynchronous {@link #search}, merged on the completion executor
+     *
+     * @return future page, failing with the IOException or ElasticsearchException of the search
+     */
+    public CompletableFuture<SearchResponse> searchAsync(String tenantId, SearchRequest searchRequest) {
+        FederatedSearch federated;
+        try {
+            federated = planFederatedSearch(tenantId, searchRequest);
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (federated.misses().isEmpty()) {
+            return CompletableFuture.completedFuture(federated.merge());
+        }
+        long startTime = System.currentTimeMillis();
+        return elasticsearchAsyncClient.msearch(toMsearchRequest(federated), Map.class)
+            .handleAsync((response, failure) -> {
+                try {
+                    if (failure != null) {
+                        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                            ? failure.getCause() : failure;
+                        if (!(cause instanceof IOException || cause instanceof ElasticsearchException)) {
+                            throw failure instanceof CompletionException ce ? ce : new CompletionException(cause);
+                        }
+                        fallBackToCached(tenantId, federated, (Exception) cause);
+                    } else {
+                        completeFederatedSearch(tenantId, federated, response,
+                            System.currentTimeMillis() - startTime);
+                    }
+                    return federated.merge();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, cachedSearchService.completionExecutor());
+    }
+
+    /**
+     * Resolve the types answered by the cache, as a single-type search would, and collect the rest
+     */
+    private FederatedSearch planFederatedSearch(String tenantId, SearchRequest searchRequest) throws IOException {
+        FederatedSearch federated = FederatedSearch.of(searchRequest, maxFederatedTypes, maxFederatedWindow);
+        for (String documentType : federated.documentTypes()) {
+            SearchRequest partRequest = federated.partRequest(documentType);
+            SearchCacheKey cacheKey = SearchCacheKey.of(tenantId, documentType, partRequest);
+            CachedSearchResponse cached = searchCache.getEntry(cacheKey);
+            if (cached != null) {
+                switch (searchCache.freshness(cacheKey, cached)) {
+                    case FRESH:
+                        federated.resolve(documentType, searchCache.responseOf(cached));
+                        continue;
+                    case STALE:
+                        cachedSearchService.refreshInBackground(tenantId, documentType, partRequest, cacheKey);
+                        federated.resolve(documentType, searchCache.responseOf(cached));
+                        continue;
+                    case INVALIDATED:
+                        break;
+                }
+            }
+            federated.miss(new FederatedSearch.Part(documentType, partRequest, cacheKey,
+                searchCache.currentGeneration(cacheKey), cached,
+                cachedSearchService.buildSearch(tenantId, documentType, partRequest)));
+        }
+        return federated;
+    }
+
+    private MsearchRequest toMsearchRequest(FederatedSearch federated) {
+        List<RequestItem> searches = new ArrayList<>(federated.misses().size());
+        for (FederatedSearch.Part part : federated.misses()) {
+            searches.add(SearchBatcher.requestItem(part.search()));
+        }
+        return MsearchRequest.of(m -> m.searches(searches));
+    }
+
+    /**
+     * Cache and resolve each type searched; a type that failed is served from its cached result if
+     * there is one, and otherwise fails the search
+     */
+    private void completeFederatedSearch(String tenantId, FederatedSearch federated, MsearchResponse<Map> response,
+                                         long tookMs) throws IOException {
+        List<FederatedSearch.Part> misses = federated.misses();
+        for (int i = 0; i < misses.size(); i++) {
+            FederatedSearch.Part part = misses.get(i);
+            MultiSearchResponseItem<Map> item = response.responses().get(i);
+            if (item.isResult()) {
+                SearchResponse partResponse = cachedSearchService.toSearchResponse(item.result(), part.request(), tookMs);
+                searchCache.put(part.cacheKey(), partResponse, part.generation());
+                federated.resolve(part.documentType(), partResponse);
+            } else if (part.cached() != null) {
+                searchCache.recordErrorFallback();
+                log.warn("Search of {} failed for tenant {}, serving cached result instead: {}",
+                    part.documentType(), tenantId, item.failure().error().reason());
+                federated.resolve(part.documentType(), searchCache.responseOf(part.cached()));
+            } else {
+                throw new IOException("Search of " + part.documentType() + " failed: "
+                    + item.failure().error().reason());
+            }
+        }
+    }
+
+    /**
+     * When the multi-search as a whole failed, serve every type searched from its cached result,
+     * or fail if one has none
+     */
+    private void fallBackToCached(String tenantId, FederatedSearch federated, Exception failure) throws IOException {
+        for (FederatedSearch.Part part : federated.misses()) {
+            if (part.cached() == null) {
+                if (failure instanceof ElasticsearchException e) {
+                    throw e;
+                }
+                throw (IOException) failure;
+            }
+        }
+        for (FederatedSearch.Part part : federated.misses()) {
+            searchCache.recordErrorFallback();
+            federated.resolve(part.documentType(), searchCache.responseOf(part.cached()));
+        }
+        log.warn("Search failed for tenant {}, serving cached results instead: {}", tenantId, failure.getMessage());
+    }
+}
@@ -0,0 +1,163 @@
+package ai.deeprunner.searcher.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Time;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens, shares and closes the points in time that cursor-mode searches page through.
+ * <p>
+ * Cursors started on the same read alias within a short window share one point in time, rather than
+ * each holding its own search contexts open on every shard. Every page extends the point in time's
+ * keep-alive; those idle for longer are closed, and the least recently used one is closed when too
+ * many are open.
+ */
+@Component
+@Slf4j
+public class PointInTimeManager {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final Time keepAlive;
+    private final long keepAliveNanos;
+    private final long reuseNanos;
+    private final int maxOpen;
+    private final ConcurrentMap<String, PointInTime> open = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PointInTime> latestByAlias = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "search-pit-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PointInTimeManager(ElasticsearchClient elasticsearchClient,
+                              @Value("${search.cursor.keep-alive-seconds:120}") long keepAliveSeconds,
+                              @Value("${search.cursor.reuse-seconds:30}") long reuseSeconds,
+                              @Value("${search.cursor.max-open:200}") int maxOpen) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.keepAlive = Time.of(t -> t.time(keepAliveSeconds + "s"));
+        this.keepAliveNanos = TimeUnit.SECONDS.toNanos(keepAliveSeconds);
+        this.reuseNanos = TimeUnit.SECONDS.toNanos(reuseSeconds);
+        this.maxOpen = maxOpen;
+    }
+
+    @PostConstruct
+    public void startReaper() {
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(keepAliveNanos) / 2);
+        reaper.scheduleWithFixedDelay(this::closeIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopReaper() {
+        // left open: peers may be serving cursors on them, and Elasticsearch expires them anyway
+        reaper.shutdownNow();
+    }
+
+    /**
+     * @return keep-alive to pass with every search on a point in time
+     */
+    public Time keepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * @return a point in time on the alias for a new cursor, shared with cursors started recently
+     * @throws IOException if one cannot be opened
+     */
+    public String acquire(String alias) throws IOException {
+        long now = System.nanoTime();
+        PointInTime latest = latestByAlias.get(alias);
+        if (latest != null && now - latest.openedAtNanos < reuseNanos && open.get(latest.id) == latest) {
+            latest.lastUsedAtNanos = now;
+            return latest.id;
+        }
+        if (open.size() >= maxOpen) {
+            open.values().stream()
+                .min(Comparator.comparingLong(pit -> pit.lastUsedAtNanos))
+                .ifPresent(this::close);
+        }
+        String id = elasticsearchClient.openPointInTime(o -> o.index(alias).keepAlive(keepAlive)).id();
+        PointInTime pit = new PointInTime(id, alias, now);
+        open.put(id, pit);
+        latestByAlias.put(alias, pit);
+        log.debug("Opened point in time on {}", alias);
+        return id;
+    }
+
+    /**
+     * Record a page searched on a point in time, whose ID Elasticsearch may have replaced
+     *
+     * @param pitId ID the page was searched with
+     * @param newPitId ID returned with the page
+     */
+    public void used(String alias, String pitId, String newPitId) {
+        long now = System.nanoTime();
+        String id = newPitId != null ? newPitId : pitId;
+        PointInTime pit = open.get(pitId);
+        if (pit == null) {
+            // opened by a peer, or before a restart
+            pit = open.computeIfAbsent(id, key -> new PointInTime(key, alias, now));
+        } else if (!id.equals(pitId)) {
+            open.remove(pitId, pit);
+            pit = new PointInTime(id, alias, pit.openedAtNanos);
+            open.put(id, pit);
+        }
+        pit.lastUsedAtNanos = now;
+    }
+
+    /**
+     * Forget a point in time Elasticsearch no longer knows
+     */
+    public void expired(String pitId) {
+        PointInTime pit = open.remove(pitId);
+        if (pit != null) {
+            latestByAlias.remove(pit.alias, pit);
+        }
+    }
+
+    void closeIdle() {
+        long now = System.nanoTime();
+        for (PointInTime pit : open.values()) {
+            if (now - pit.lastUsedAtNanos > keepAliveNanos) {
+                close(pit);
+            }
+        }
+    }
+
+    private void close(PointInTime pit) {
+        if (!open.remove(pit.id, pit)) {
+            return;
+        }
+        latestByAlias.remove(pit.alias, pit);
+        try {
+            elasticsearchClient.closePointInTime(c -> c.id(pit.id));
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to close point in time on {}: {}", pit.alias, e.getMessage());
+        }
+    }
+
+    private static final class PointInTime {
+        final String id;
+        final String alias;
+        final long openedAtNanos;
+        volatile long lastUsedAtNanos;
+
+        PointInTime(String id, String alias, long openedAtNanos) {
+            this.id = id;
+            this.alias = alias;
+            this.openedAtNanos = openedAtNanos;
+            this.lastUsedAtNanos = openedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.model.SearchFilter;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermQuery;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A search compiled into the clause that scores hits and the clauses that only filter them.
+ * <p>
+ * Filters run in filter context, where Elasticsearch skips scoring and can cache their matches as
+ * bitsets across requests; repeated filters are added once. With no scoring clause, every hit
+ * gets the same constant score.
+ */
+public final class QueryPlan {
+
+    private Query scoring;
+    private final Map<String, Query> filters = new LinkedHashMap<>();
+
+    /**
+     * Set the clause that scores hits, replacing any previous one
+     */
+    public QueryPlan score(Query query) {
+        this.scoring = query;
+        return this;
+    }
+
+    /**
+     * Require an exact value, unless the same term is already required
+     */
+    public QueryPlan filterTerm(String field, String value) {
+        filters.computeIfAbsent("term\u0000" + field + "\u0000" + value, key -> Query.of(q -> q
+            .term(TermQuery.of(t -> t
+                .field(field)
+                .value(value)
+            ))
+        ));
+        return this;
+    }
+
+    /**
+     * Require a typed filter, unless the same filter is already required
+     */
+    public QueryPlan filter(SearchFilter filter) {
+        if (filter.getKind() == SearchFilter.Kind.TERM) {
+            return filterTerm(filter.getField(), filter.getValue());
+        }
+        String key = filter.getKind() + "\u0000" + filter.getField() + "\u0000" + filter.canonicalValue();
+        filters.computeIfAbsent(key, k -> QueryTemplate.filter(filter));
+        return this;
+    }
+
+    /**
+     * @return the scoring clause, or null if hits are constant-scored
+     */
+    public Query getScoring() {
+        return scoring;
+    }
+
+    /**
+     * @return the filter clauses, in the order first added
+     */
+    public List<Query> getFilters() {
+        return new ArrayList<>(filters.values());
+    }
+
+    /**
+     * @return the Elasticsearch query for the plan
+     */
+    public Query toQuery() {
+        List<Query> filterClauses = getFilters();
+        if (scoring == null) {
+            if (filterClauses.isEmpty()) {
+                return Query.of(q -> q.matchAll(m -> m));
+            }
+            Query filter = filterClauses.size() == 1
+                ? filterClauses.get(0)
+                : Query.of(q -> q.bool(b -> b.filter(filterClauses)));
+            return Query.of(q -> q.constantScore(c -> c.filter(filter)));
+        }
+        if (filterClauses.isEmpty()) {
+            return scoring;
+        }
+        return Query.of(q -> q.bool(b -> b.must(scoring).filter(filterClauses)));
+    }
+}
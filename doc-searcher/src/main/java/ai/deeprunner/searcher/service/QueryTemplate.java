@@ -0,0 +1,110 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.model.SearchFilter;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import co.elastic.clients.json.JsonData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A query plan compiled once per request shape: whether there is query text, which fields it
+ * searches and which filter keys are set. Everything that depends only on the shape is worked out
+ * at compile time and every query it produces shares the clauses that do not depend on request
+ * values, since query objects are immutable; binding a request only builds the value-dependent
+ * leaves. The result is the same DSL {@link QueryPlan} produces.
+ */
+final class QueryTemplate {
+
+    static final String TENANT_FIELD = "tenantId";
+    static final String DELETED_FIELD = "is_deleted";
+    static final Query NOT_DELETED = term(DELETED_FIELD, "false");
+
+    private final List<String> textFields;
+    private final String[] filterFields;
+    private final int filterCount;
+
+    /**
+     * @param textFields normalized fields to search text in, or null for a request without text
+     * @param filterFields user filter keys, in request order
+     */
+    QueryTemplate(List<String> textFields, List<String> filterFields) {
+        this.textFields = textFields;
+        this.filterFields = filterFields.toArray(new String[0]);
+        this.filterCount = filterFields.size() + 2;
+    }
+
+    /**
+     * @param tenantFilter term on the request's tenant, shared across its requests
+     * @param queryText query text, ignored if the shape has none
+     * @param filters user filters, with the keys of the shape
+     */
+    Query bind(Query tenantFilter, String tenantId, String queryText, Map<String, Object> filters) {
+        List<Query> filterClauses = new ArrayList<>(filterCount);
+        filterClauses.add(tenantFilter);
+        for (String field : filterFields) {
+            SearchFilter filter = SearchFilter.of(field, filters.get(field));
+            // the same term as a fixed filter is added once
+            if (filter.getKind() == SearchFilter.Kind.TERM
+                && ((field.equals(TENANT_FIELD) && filter.getValue().equals(tenantId))
+                    || (field.equals(DELETED_FIELD) && filter.getValue().equals("false")))) {
+                continue;
+            }
+            filterClauses.add(filter(filter));
+        }
+        filterClauses.add(NOT_DELETED);
+
+        if (textFields == null) {
+            return Query.of(q -> q.constantScore(c -> c.filter(f -> f.bool(b -> b.filter(filterClauses)))));
+        }
+        Query scoring = textFields.size() == 1
+            ? Query.of(q -> q.match(m -> m.field(textFields.get(0)).query(queryText)))
+            : Query.of(q -> q.multiMatch(m -> m.query(queryText).fields(textFields).type(TextQueryType.MostFields)));
+        return Query.of(q -> q.bool(b -> b.must(scoring).filter(filterClauses)));
+    }
+
+    static Query term(String field, String value) {
+        return Query.of(q -> q.term(TermQuery.of(t -> t.field(field).value(value))));
+    }
+
+    /**
+     * The filter clause of a typed filter; terms values and range operators come in canonical
+     * order, so equal filters give equal clauses for Elasticsearch's query cache
+     */
+    static Query filter(SearchFilter filter) {
+        String field = filter.getField();
+        return switch (filter.getKind()) {
+            case TERM -> term(field, filter.getValue());
+            case TERMS -> {
+                List<FieldValue> values = filter.getValues().stream().map(FieldValue::of).toList();
+                yield Query.of(q -> q.terms(t -> t.field(field).terms(v -> v.value(values))));
+            }
+            case RANGE -> Query.of(q -> q.range(range(field, filter.getRange())));
+            case PREFIX -> Query.of(q -> q.prefix(p -> p.field(field).value(filter.getValue())));
+            case EXISTS -> filter.isExists()
+                ? Query.of(q -> q.exists(e -> e.field(field)))
+                : Query.of(q -> q.bool(b -> b.mustNot(m -> m.exists(e -> e.field(field)))));
+        };
+    }
+
+    private static RangeQuery range(String field, Map<String, Object> operators) {
+        RangeQuery.Builder range = new RangeQuery.Builder().field(field);
+        operators.forEach((operator, value) -> {
+            switch (operator) {
+                case "gt" -> range.gt(JsonData.of(value));
+                case "gte" -> range.gte(JsonData.of(value));
+                case "lt" -> range.lt(JsonData.of(value));
+                case "lte" -> range.lte(JsonData.of(value));
+                case "format" -> range.format(value.toString());
+                case "time_zone" -> range.timeZone(value.toString());
+                default -> throw new IllegalArgumentException("Unknown range operator " + operator);
+            }
+        });
+        return range.build();
+    }
+}
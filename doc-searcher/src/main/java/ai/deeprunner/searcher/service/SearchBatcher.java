@@ -0,0 +1,260 @@
+package ai.deeprunner.searcher.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.MsearchRequest;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.MultisearchBody;
+import co.elastic.clients.elasticsearch.core.msearch.RequestItem;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends independent searches to Elasticsearch, batching those that arrive together into one
+ * multi-search.
+ * <p>
+ * Under load, a search joins the open batch, which is sent as one _msearch when it is full or its
+ * wait has passed, and each caller gets its own item of the response back; an item that failed
+ * fails only its own search. While fewer searches than a threshold are in flight, a search is sent
+ * on its own at once, so batching costs no latency when there is nothing to batch it with.
+ */
+@Component
+@Slf4j
+public class SearchBatcher {
+
+    private static final String ENDPOINT_ID = "msearch";
+
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final int maxSize;
+    private final int minInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Object lock = new Object();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "search-batch-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Searches waiting to be sent, guarded by lock
+     */
+    private List<Pending> pending = new ArrayList<>();
+
+    /**
+     * Sequence number of the open batch, so a timer only sends the batch it was set for
+     */
+    private long batchSequence;
+
+    public SearchBatcher(ElasticsearchAsyncClient elasticsearchAsyncClient,
+                         @Value("${search.batch.enabled:false}") boolean enabled,
+                         @Value("${search.batch.max-wait-micros:1000}") long maxWaitMicros,
+                         @Value("${search.batch.max-size:32}") int maxSize,
+                         @Value("${search.batch.min-in-flight:8}") int minInFlight) {
+        this.elasticsearchAsyncClient = elasticsearchAsyncClient;
+        this.enabled = enabled && maxSize > 1;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.maxSize = maxSize;
+        this.minInFlight = minInFlight;
+    }
+
+    @PreDestroy
+    public void stopTimer() {
+        timer.shutdownNow();
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    /**
+     * @return whether searches may be batched; when not, they are better sent on the blocking client
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return future response, failing with the IOException or ElasticsearchException of the search
+     */
+    public CompletableFuture<ResponseBody<Map>> search(SearchRequest search) {
+        int searches = inFlight.incrementAndGet();
+        CompletableFuture<ResponseBody<Map>> result;
+        try {
+            result = enabled && searches >= minInFlight ? enqueue(search) : searchAlone(search);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((response, failure) -> inFlight.decrementAndGet());
+    }
+
+    /**
+     * A search as a multi-search item, copying the parts of the request the searcher sets; the
+     * request cache flag goes in the item's header
+     */
+    static RequestItem requestItem(SearchRequest search) {
+        MultisearchBody body = MultisearchBody.of(b -> {
+            b.query(search.query()).from(search.from()).size(search.size())
+                .source(search.source())
+                .trackTotalHits(search.trackTotalHits())
+                .terminateAfter(search.terminateAfter());
+            if (!search.sort().isEmpty()) {
+                b.sort(search.sort());
+            }
+            if (!search.docvalueFields().isEmpty()) {
+                b.docvalueFields(search.docvalueFields());
+            }
+            if (!search.aggregations().isEmpty()) {
+                b.aggregations(search.aggregations());
+            }
+            return b;
+        });
+        return RequestItem.of(r -> r
+            .header(h -> h.index(search.index()).requestCache(search.requestCache()))
+            .body(body));
+    }
+
+    private CompletableFuture<ResponseBody<Map>> searchAlone(SearchRequest search) {
+        return elasticsearchAsyncClient.search(search, Map.class).thenApply(response -> response);
+    }
+
+    private CompletableFuture<ResponseBody<Map>> enqueue(SearchRequest search) {
+        Pending searching = new Pending(search, new CompletableFuture<>());
+        List<Pending> full = null;
+        synchronized (lock) {
+            pending.add(searching);
+            if (pending.size() >= maxSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                long sequence = batchSequence;
+                try {
+                    timer.schedule(() -> sendAfterWait(sequence), maxWaitNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // shutting down: nothing left to batch with
+                    full = takePending();
+                }
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return searching.result();
+    }
+
+    private void sendAfterWait(long sequence) {
+        List<Pending> batch;
+        synchronized (lock) {
+            if (sequence != batchSequence) {
+                // already sent when it filled up
+                return;
+            }
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    private List<Pending> takePending() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>(maxSize);
+        batchSequence++;
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            Pending alone = batch.get(0);
+            complete(alone, searchAlone(alone.search()));
+            return;
+        }
+        MsearchRequest request;
+        try {
+            List<RequestItem> searches = new ArrayList<>(batch.size());
+            for (Pending searching : batch) {
+                searches.add(requestItem(searching.search()));
+            }
+            request = MsearchRequest.of(m -> m.searches(searches));
+        } catch (RuntimeException e) {
+            failAll(batch, e);
+            return;
+        }
+        log.debug("Sending {} searches as one multi-search", batch.size());
+        CompletableFuture<MsearchResponse<Map>> sent;
+        try {
+            sent = elasticsearchAsyncClient.msearch(request, Map.class);
+        } catch (RuntimeException e) {
+            failAll(batch, e);
+            return;
+        }
+        sent.whenComplete((response, failure) -> {
+            // whatever goes wrong, no caller may be left waiting on its item
+            try {
+                if (failure != null) {
+                    failAll(batch, failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure);
+                    return;
+                }
+                List<MultiSearchResponseItem<Map>> items = response.responses();
+                if (items.size() != batch.size()) {
+                    failAll(batch, new IOException("Multi-search returned " + items.size()
+                        + " responses for " + batch.size() + " searches"));
+                    return;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    MultiSearchResponseItem<Map> item = items.get(i);
+                    if (item.isResult()) {
+                        batch.get(i).result().complete(item.result());
+                    } else {
+                        batch.get(i).result().completeExceptionally(
+                            new ElasticsearchException(ENDPOINT_ID, item.failure()));
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                log.warn("Could not hand out multi-search responses: {}", e.toString());
+                failAll(batch, e);
+            }
+        });
+    }
+
+    /**
+     * Fail every search of the batch not completed yet
+     */
+    private static void failAll(List<Pending> batch, Throwable cause) {
+        batch.forEach(searching -> searching.result().completeExceptionally(cause));
+    }
+
+    private static void complete(Pending searching, CompletableFuture<ResponseBody<Map>> response) {
+        response.whenComplete((result, failure) -> {
+            if (failure != null) {
+                searching.result().completeExceptionally(
+                    failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+            } else {
+                searching.result().complete(result);
+            }
+        });
+    }
+
+    private record Pending(SearchRequest search, CompletableFuture<ResponseBody<Map>> result) {
+    }
+}
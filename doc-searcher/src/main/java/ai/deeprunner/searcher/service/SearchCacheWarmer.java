@@ -0,0 +1,167 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.cache.InMemorySearchCache;
+import ai.deeprunner.searcher.cache.SearchCacheKey;
+import ai.deeprunner.searcher.cache.SearchCacheSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the search cache warm across restarts.
+ * The hottest cache entries are periodically written to a local snapshot file, and once more on
+ * shutdown. When the searcher is ready, the snapshot is replayed in the background: captured
+ * responses still within their hard TTL are restored as stale entries, refreshed on first read;
+ * the other searches are re-run against Elasticsearch at a bounded rate.
+ */
+@Component
+@Slf4j
+public class SearchCacheWarmer {
+
+    private static final int MAX_CONSECUTIVE_FAILURES = 10;
+
+    private final InMemorySearchCache searchCache;
+    private final DocumentSearchService documentSearchService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path path;
+    private final long intervalSeconds;
+    private final int maxEntries;
+    private final boolean includeResponses;
+    private final int warmupPerSecond;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "search-cache-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean warmed;
+
+    public SearchCacheWarmer(InMemorySearchCache searchCache,
+                             DocumentSearchService documentSearchService,
+                             ObjectMapper objectMapper,
+                             @Value("${search.cache.snapshot.enabled:false}") boolean enabled,
+                             @Value("${search.cache.snapshot.path:search-cache.snapshot}") String path,
+                             @Value("${search.cache.snapshot.interval-seconds:60}") long intervalSeconds,
+                             @Value("${search.cache.snapshot.max-entries:5000}") int maxEntries,
+                             @Value("${search.cache.snapshot.include-responses:false}") boolean includeResponses,
+                             @Value("${search.cache.snapshot.warmup-per-second:50}") int warmupPerSecond) {
+        this.searchCache = searchCache;
+        this.documentSearchService = documentSearchService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.path = Path.of(path);
+        this.intervalSeconds = intervalSeconds;
+        this.maxEntries = maxEntries;
+        this.includeResponses = includeResponses;
+        this.warmupPerSecond = Math.max(1, warmupPerSecond);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // same thread: the first snapshot is only taken once warm-up has finished
+        scheduler.execute(this::warm);
+        scheduler.scheduleWithFixedDelay(this::save, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        // a partially warmed cache would overwrite a better snapshot
+        if (enabled && warmed) {
+            save();
+        }
+    }
+
+    void warm() {
+        long started = System.currentTimeMillis();
+        SearchCacheSnapshot snapshot;
+        try {
+            snapshot = SearchCacheSnapshot.readFrom(path, objectMapper);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable search cache snapshot {}: {}", path, e.getMessage());
+            warmed = true;
+            return;
+        }
+        if (snapshot == null) {
+            log.info("No search cache snapshot at {}, starting cold", path);
+            warmed = true;
+            return;
+        }
+
+        long ageMillis = started - snapshot.getCapturedAtMillis();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / warmupPerSecond;
+        long nextSearchAt = System.nanoTime();
+        int restored = 0;
+        int searched = 0;
+        int failures = 0;
+        for (SearchCacheSnapshot.Entry entry : snapshot.getEntries()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            SearchCacheKey key = entry.getKey();
+            long remainingMillis = entry.getRemainingTtlMillis() - ageMillis;
+            try {
+                if (entry.getResponse() != null && remainingMillis > 0) {
+                    searchCache.restore(key, entry.getResponse(), Duration.ofMillis(remainingMillis));
+                    restored++;
+                    continue;
+                }
+                nextSearchAt = pace(nextSearchAt, intervalNanos);
+                documentSearchService.searchDocuments(key.getTenantId(), key.toRequest());
+                searched++;
+                failures = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.debug("Search cache warm-up failed for {}: {}", key, e.getMessage());
+                if (++failures >= MAX_CONSECUTIVE_FAILURES) {
+                    log.warn("Abandoning search cache warm-up after {} consecutive failures", failures);
+                    break;
+                }
+            }
+        }
+        warmed = true;
+        log.info("Search cache warmed from {} in {}ms: {} responses restored, {} searches re-run",
+            path, System.currentTimeMillis() - started, restored, searched);
+    }
+
+    void save() {
+        try {
+            SearchCacheSnapshot snapshot = searchCache.snapshot(maxEntries, includeResponses);
+            snapshot.writeTo(path, objectMapper);
+            log.debug("Wrote {} search cache entries to {}", snapshot.getEntries().size(), path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write search cache snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Sleep until the next search slot
+     *
+     * @return the slot after it
+     */
+    private static long pace(long nextAt, long intervalNanos) throws InterruptedException {
+        long wait = nextAt - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } else {
+            nextAt = System.nanoTime();
+        }
+        return nextAt + intervalNanos;
+    }
+}
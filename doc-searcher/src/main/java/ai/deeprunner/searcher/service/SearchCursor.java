@@ -0,0 +1,88 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.cache.SearchCacheKey;
+import ai.deeprunner.searcher.model.SearchRequest;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position in a cursor-mode search: the point in time searched, the sort values of the last hit
+ * returned, and a fingerprint of the search so a cursor cannot be replayed against another one.
+ * Clients see it as an opaque URL-safe string.
+ *
+ * @param pitId point-in-time ID to search
+ * @param searchAfter sort values of the last hit, tiebreaker included
+ * @param fingerprint hash of the canonical search, pagination excluded
+ * @param page number of the page the cursor leads to
+ * @param total total hits counted on the first page, which later pages do not count again; null if not counted
+ * @param totalExact whether the total is exact rather than a lower bound
+ */
+record SearchCursor(String pitId, List<Object> searchAfter, long fingerprint, int page, Long total,
+                    boolean totalExact) {
+
+    /**
+     * @return fingerprint of the search the request continues or starts
+     */
+    static long fingerprint(String tenantId, String documentType, SearchRequest request) {
+        SearchRequest unpaged = SearchRequest.builder()
+            .query(request.getQuery())
+            .fields(request.getFields())
+            .documentType(documentType)
+            .sort(request.getSort())
+            .filters(request.getFilters())
+            .totalHits(request.getTotalHits())
+            .build();
+        return SearchCacheKey.of(tenantId, documentType, unpaged).getHash();
+    }
+
+    static SearchCursor after(String pitId, List<FieldValue> sortValues, long fingerprint, int page, Long total,
+                              boolean totalExact) {
+        List<Object> values = new ArrayList<>(sortValues.size());
+        for (FieldValue value : sortValues) {
+            values.add(value.isNull() ? null : value._get());
+        }
+        return new SearchCursor(pitId, values, fingerprint, page, total, totalExact);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the string is not a cursor
+     */
+    static SearchCursor decode(String cursor, ObjectMapper objectMapper) {
+        try {
+            SearchCursor decoded = objectMapper.readValue(Base64.getUrlDecoder().decode(cursor), SearchCursor.class);
+            if (decoded.pitId() == null || decoded.searchAfter() == null) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return decoded;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    String encode(ObjectMapper objectMapper) throws IOException {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(this));
+    }
+
+    List<FieldValue> searchAfterValues() {
+        List<FieldValue> values = new ArrayList<>(searchAfter.size());
+        for (Object value : searchAfter) {
+            if (value == null) {
+                values.add(FieldValue.NULL);
+            } else if (value instanceof Boolean b) {
+                values.add(FieldValue.of(b));
+            } else if (value instanceof Double || value instanceof Float) {
+                values.add(FieldValue.of(((Number) value).doubleValue()));
+            } else if (value instanceof Number n) {
+                values.add(FieldValue.of(n.longValue()));
+            } else {
+                values.add(FieldValue.of(value.toString()));
+            }
+        }
+        return values;
+    }
+}
@@ -1,24 +1,45 @@
 package ai.deeprunner.searcher.service;
 
+import ai.deeprunner.searcher.model.AggregationRequest;
+import ai.deeprunner.searcher.model.SearchFilter;
 import ai.deeprunner.searcher.model.SearchRequest;
+import co.elastic.clients.elasticsearch._types.FieldValue;
 import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
 import co.elastic.clients.elasticsearch._types.query_dsl.MatchQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
-import co.elastic.clients.elasticsearch._types.query_dsl.TermQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Builder for constructing Elasticsearch search queries
  * Breaks down query building into smaller, focused methods
+ * Queries are built from templates compiled once per request shape (text or not, searched fields,
+ * filter keys) and cached, so each request only binds its values
+ * Facets are a separate size=0 search, which Elasticsearch's shard request cache can answer
  */
 @Component
 @Slf4j
 public class SearchQueryBuilder {
+
+    @Value("${search.query.template-cache-size:1024}")
+    private int templateCacheSize = 1024;
+
+    @Value("${search.total-hits.default:10000}")
+    private String defaultTotalHits = "10000";
+
+    private final ConcurrentMap<QueryShape, QueryTemplate> templates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Query> tenantFilters = new ConcurrentHashMap<>();
     
     /**
      * Build a complete Elasticsearch query from search request
@@ -28,24 +49,7 @@ public class SearchQueryBuilder {
      * @return complete Elasticsearch query
      */
     public Query buildQuery(ai.deeprunner.searcher.model.SearchRequest searchRequest, String tenantId) {
-        List<Query> mustClauses = new ArrayList<>();
-        
-        // 1. Build base query (text search or match all)
-        Query baseQuery = buildBaseQuery(searchRequest);
-        mustClauses.add(baseQuery);
-        
-        // 2. Add tenant filter if needed (for shared indexes)
-        Query tenantFilter = buildTenantFilter(tenantId);
-        if (tenantFilter != null) {
-            mustClauses.add(tenantFilter);
-        }
-        
-        // 3. Add additional filters if provided
-        List<Query> filterQueries = buildFilterQueries(searchRequest);
-        mustClauses.addAll(filterQueries);
-        
-        // 4. Build final query combining all clauses
-        return buildFinalQuery(mustClauses);
+        return buildQueryWithFields(searchRequest, tenantId, searchRequest.getFields());
     }
 
     /**
@@ -53,46 +57,80 @@ public class SearchQueryBuilder {
      *
      * @param searchRequest search request
      * @param tenantId tenant ID
-     * @param indexName target index name
-     * @param strategy index strategy (shared/isolated)
      * @param searchFields fields to search for text (if empty, defaults are used)
      * @return complete Elasticsearch query
      */
     public Query buildQueryWithFields(ai.deeprunner.searcher.model.SearchRequest searchRequest,
                                       String tenantId,
                                       List<String> searchFields) {
-        List<Query> mustClauses = new ArrayList<>();
-        
-        // 1. Build base query (text search or match all) using provided fields
-        Query baseQuery = buildBaseQueryWithFields(searchRequest, searchFields);
-        mustClauses.add(baseQuery);
-        
-        // 2. Add tenant filter if needed (for shared indexes)
-        Query tenantFilter = buildTenantFilter(tenantId);
-        if (tenantFilter != null) {
-            mustClauses.add(tenantFilter);
+        String queryText = searchRequest.getQuery();
+        boolean hasText = queryText != null && !queryText.trim().isEmpty();
+        Map<String, Object> filters = searchRequest.getFilters() != null ? searchRequest.getFilters() : Map.of();
+        // copied: the key must not change with the request
+        List<String> shapeFields = hasText ? (searchFields == null ? List.of() : new ArrayList<>(searchFields)) : null;
+        QueryShape shape = new QueryShape(shapeFields, List.copyOf(filters.keySet()));
+        QueryTemplate template = templates.get(shape);
+        if (template == null) {
+            template = new QueryTemplate(hasText ? normalizeFields(searchFields) : null, shape.filterKeys());
+            // shapes past the limit are compiled per request rather than cached
+            if (templates.size() < templateCacheSize) {
+                templates.putIfAbsent(shape, template);
+            }
         }
-        
-        // 3. Add additional filters if provided
-        List<Query> filterQueries = buildFilterQueries(searchRequest);
-        mustClauses.addAll(filterQueries);
-        
-        // 4. Build final query combining all clauses
-        return buildFinalQuery(mustClauses);
+        Query tenantFilter = tenantFilters.get(tenantId);
+        if (tenantFilter == null) {
+            tenantFilter = QueryTemplate.term(QueryTemplate.TENANT_FIELD, tenantId);
+            if (tenantFilters.size() < templateCacheSize) {
+                tenantFilters.putIfAbsent(tenantId, tenantFilter);
+            }
+        }
+        return template.bind(tenantFilter, tenantId, queryText, filters);
     }
-    
+
     /**
-     * Build base query - either text search or match all
-     * 
+     * Plan a search without a cached template; produces the same query as {@link #buildQuery}
+     *
+     * @param searchRequest search request
+     * @param tenantId tenant ID
+     * @return query plan
+     */
+    public QueryPlan plan(ai.deeprunner.searcher.model.SearchRequest searchRequest, String tenantId) {
+        return plan(searchRequest, tenantId, searchRequest.getFields());
+    }
+
+    /**
+     * Plan a search: the text query is the only scoring clause; the tenant, user filters and
+     * soft-delete flag go to filter context
+     *
      * @param searchRequest search request
-     * @return base query
+     * @param tenantId tenant ID
+     * @param searchFields fields to search for text (if empty, defaults are used)
+     * @return query plan
      */
-    public Query buildBaseQuery(ai.deeprunner.searcher.model.SearchRequest searchRequest) {
+    public QueryPlan plan(ai.deeprunner.searcher.model.SearchRequest searchRequest,
+                          String tenantId,
+                          List<String> searchFields) {
+        QueryPlan plan = new QueryPlan();
+
+        // 1. Text search scores hits; without it every hit scores the same
         if (searchRequest.getQuery() != null && !searchRequest.getQuery().trim().isEmpty()) {
-            return buildTextSearchQuery(searchRequest.getQuery(), searchRequest.getFields());
-        } else {
-            return buildMatchAllQuery();
+            plan.score(buildTextSearchQueryWithFields(searchRequest.getQuery(), searchFields));
         }
+
+        // 2. Tenant filter (for shared indexes)
+        plan.filterTerm(QueryTemplate.TENANT_FIELD, tenantId);
+
+        // 3. Additional filters if provided: terms, terms sets, ranges, prefixes, exists
+        if (searchRequest.getFilters() != null) {
+            for (Map.Entry<String, Object> entry : searchRequest.getFilters().entrySet()) {
+                plan.filter(SearchFilter.of(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        // 4. Soft-deleted documents never match
+        plan.filterTerm(QueryTemplate.DELETED_FIELD, "false");
+
+        return plan;
     }
     
     /**
@@ -107,35 +145,37 @@ public class SearchQueryBuilder {
     }
 
     /**
-     * Build text search query using provided fields
+     * Build text search query using provided fields: a match query, or for several fields a
+     * most_fields multi_match, which sums the per-field scores like one match clause per field would
      */
     public Query buildTextSearchQueryWithFields(String queryText, List<String> fields) {
-        List<String> effectiveFields = (fields == null || fields.isEmpty()) 
-            ? List.of("title", "content") 
-            : fields;
+        List<String> effectiveFields = normalizeFields(fields);
+        if (effectiveFields.size() == 1) {
+            String field = effectiveFields.get(0);
+            return Query.of(q -> q.match(MatchQuery.of(m -> m.field(field).query(queryText))));
+        }
+        List<String> multiMatchFields = effectiveFields;
         return Query.of(q -> q
-            .bool(b -> {
-                for (String field : effectiveFields) {
-                    b.should(s -> s.match(MatchQuery.of(m -> m.field(field).query(queryText))));
-                }
-                b.minimumShouldMatch("1");
-                return b;
-            })
+            .multiMatch(m -> m
+                .query(queryText)
+                .fields(multiMatchFields)
+                .type(TextQueryType.MostFields)
+            )
         );
     }
-
+    
     /**
-     * Build base query with explicit fields
+     * @return the fields trimmed and de-duplicated, or title and content if there are none
      */
-    public Query buildBaseQueryWithFields(ai.deeprunner.searcher.model.SearchRequest searchRequest,
-                                          List<String> fields) {
-        if (searchRequest.getQuery() != null && !searchRequest.getQuery().trim().isEmpty()) {
-            return buildTextSearchQueryWithFields(searchRequest.getQuery(), fields);
-        } else {
-            return buildMatchAllQuery();
-        }
+    private static List<String> normalizeFields(List<String> fields) {
+        List<String> normalized = fields == null ? List.of() : fields.stream()
+            .filter(field -> field != null && !field.isBlank())
+            .map(String::trim)
+            .distinct()
+            .toList();
+        return normalized.isEmpty() ? List.of("title", "content") : normalized;
     }
-    
+
     /**
      * Build match all query (returns all documents)
      * 
@@ -146,104 +186,170 @@ public class SearchQueryBuilder {
     }
     
     /**
-     * Build tenant filter query (needed for shared indexes)
+     * Build Elasticsearch search request with query, pagination, sorting, projection and hit counting
      * 
-     * @param tenantId tenant ID
-     * @return tenant filter query, or null if not needed
+     * @param indexName target index name
+     * @param query Elasticsearch query
+     * @param searchRequest search request with pagination and sorting
+     * @return Elasticsearch search request builder
      */
-    public Query buildTenantFilter(String tenantId) {
-            return Query.of(q -> q
-                .term(TermQuery.of(t -> t
-                    .field("tenantId")
-                    .value(tenantId)
-                ))
-            );
+    public co.elastic.clients.elasticsearch.core.SearchRequest.Builder buildSearchRequest(Query query,
+                                                   ai.deeprunner.searcher.model.SearchRequest searchRequest) {
+        co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder = 
+            new co.elastic.clients.elasticsearch.core.SearchRequest.Builder()
+            .query(query)
+            .from(searchRequest.getPage() * searchRequest.getSize())
+            .size(searchRequest.getSize());
+        
+        // Apply sorting
+        applySorting(builder, searchRequest);
+        applyProjection(builder, searchRequest);
+        applyHitCounting(builder, searchRequest.getTotalHits());
+        if (searchRequest.getTerminateAfter() != null && searchRequest.getTerminateAfter() > 0) {
+            builder.terminateAfter(searchRequest.getTerminateAfter().longValue());
+        }
+        
+        return builder;
     }
     
     /**
-     * Build filter queries from additional filters in search request
-     * 
-     * @param searchRequest search request
-     * @return list of filter queries
+     * Build the facet search of a request: its aggregations over every matching document, without
+     * hits or hit counting. Elasticsearch caches size=0 results per shard until the next refresh
+     * changes it, so the request cache is asked for explicitly.
+     *
+     * @param query Elasticsearch query, the same as for the hits
+     * @param searchRequest search request with aggregations
+     * @return Elasticsearch search request builder
+     * @throws IllegalArgumentException if an aggregation is incomplete or of an unknown type
      */
-    public List<Query> buildFilterQueries(ai.deeprunner.searcher.model.SearchRequest searchRequest) {
-        List<Query> filterQueries = new ArrayList<>();
-        
-        if (searchRequest.getFilters() != null && !searchRequest.getFilters().isEmpty()) {
-            for (Map.Entry<String, Object> entry : searchRequest.getFilters().entrySet()) {
-                Query filterQuery = buildTermFilter(entry.getKey(), entry.getValue());
-                filterQueries.add(filterQuery);
-            }
+    public co.elastic.clients.elasticsearch.core.SearchRequest.Builder buildFacetSearchRequest(Query query,
+                                                   ai.deeprunner.searcher.model.SearchRequest searchRequest) {
+        co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder =
+            new co.elastic.clients.elasticsearch.core.SearchRequest.Builder()
+            .query(query)
+            .size(0)
+            .trackTotalHits(t -> t.enabled(false))
+            .requestCache(true);
+        for (Map.Entry<String, AggregationRequest> entry : searchRequest.getAggregations().entrySet()) {
+            builder.aggregations(entry.getKey(), buildAggregation(entry.getKey(), entry.getValue()));
         }
-
-        Query filterQuery = buildTermFilter("is_deleted", false);
-        filterQueries.add(filterQuery);
-
-        return filterQueries;
+        return builder;
     }
-    
+
     /**
-     * Build a term filter query (exact match)
-     * 
-     * @param field field name
-     * @param value field value
-     * @return term filter query
+     * Build one aggregation: terms, range, histogram or cardinality
+     *
+     * @throws IllegalArgumentException if it is incomplete or of an unknown type
      */
-    public Query buildTermFilter(String field, Object value) {
-        return Query.of(q -> q
-            .term(TermQuery.of(t -> t
-                .field(field)
-                .value(value.toString())
-            ))
-        );
+    public Aggregation buildAggregation(String name, AggregationRequest aggregation) {
+        if (aggregation == null || aggregation.getField() == null || aggregation.getField().isBlank()
+            || aggregation.getType() == null) {
+            throw new IllegalArgumentException("Aggregation " + name + " needs a type and a field");
+        }
+        String field = aggregation.getField().trim();
+        switch (aggregation.getType().trim().toLowerCase()) {
+            case "terms": {
+                int size = aggregation.getSize() != null && aggregation.getSize() > 0 ? aggregation.getSize() : 10;
+                return Aggregation.of(a -> a.terms(t -> t.field(field).size(size)));
+            }
+            case "range": {
+                if (aggregation.getRanges() == null || aggregation.getRanges().isEmpty()) {
+                    throw new IllegalArgumentException("Range aggregation " + name + " needs ranges");
+                }
+                List<AggregationRange> ranges = new ArrayList<>(aggregation.getRanges().size());
+                for (AggregationRequest.Range range : aggregation.getRanges()) {
+                    ranges.add(AggregationRange.of(r -> r
+                        .key(range.getKey())
+                        .from(range.getFrom() != null ? range.getFrom().toString() : null)
+                        .to(range.getTo() != null ? range.getTo().toString() : null)));
+                }
+                return Aggregation.of(a -> a.range(r -> r.field(field).ranges(ranges)));
+            }
+            case "histogram": {
+                if (aggregation.getInterval() == null || aggregation.getInterval() <= 0) {
+                    throw new IllegalArgumentException("Histogram aggregation " + name + " needs a positive interval");
+                }
+                double interval = aggregation.getInterval();
+                return Aggregation.of(a -> a.histogram(h -> h.field(field).interval(interval).minDocCount(1)));
+            }
+            case "cardinality":
+                return Aggregation.of(a -> a.cardinality(c -> c.field(field)));
+            default:
+                throw new IllegalArgumentException("Unknown aggregation type " + aggregation.getType()
+                    + ": expected terms, range, histogram or cardinality");
+        }
     }
-    
+
     /**
-     * Build final query by combining all must clauses
-     * If only one clause, return it directly; otherwise combine with bool query
-     * 
-     * @param mustClauses list of queries that must match
-     * @return final combined query
+     * Build a cursor-mode search request: the page after the given sort values, on a point in time
+     * rather than an index, and sorted with _shard_doc as tiebreaker so every hit has a unique position
+     *
+     * @param query Elasticsearch query
+     * @param searchRequest search request with page size and sorting
+     * @param pitId point in time to search
+     * @param keepAlive how much longer to keep the point in time open
+     * @param searchAfter sort values of the last hit of the previous page, or null for the first page
+     * @return Elasticsearch search request builder
      */
-    public Query buildFinalQuery(List<Query> mustClauses) {
-        if (mustClauses.isEmpty()) {
-            return buildMatchAllQuery();
+    public co.elastic.clients.elasticsearch.core.SearchRequest.Builder buildCursorSearchRequest(Query query,
+                                                   ai.deeprunner.searcher.model.SearchRequest searchRequest,
+                                                   String pitId, Time keepAlive, List<FieldValue> searchAfter) {
+        co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder =
+            new co.elastic.clients.elasticsearch.core.SearchRequest.Builder()
+            .query(query)
+            .size(searchRequest.getSize())
+            .pit(p -> p.id(pitId).keepAlive(keepAlive));
+
+        if (searchAfter == null) {
+            applyHitCounting(builder, searchRequest.getTotalHits());
+        } else {
+            builder.trackTotalHits(t -> t.enabled(false));
         }
-        
-        if (mustClauses.size() == 1) {
-            return mustClauses.get(0);
+        applySorting(builder, searchRequest);
+        builder.sort(s -> s.field(f -> f.field("_shard_doc").order(SortOrder.Asc)));
+        applyProjection(builder, searchRequest);
+        if (searchAfter != null) {
+            builder.searchAfter(searchAfter);
         }
-        
-        // Combine multiple queries with bool query
-        return Query.of(q -> q
-            .bool(b -> {
-                for (Query mustQuery : mustClauses) {
-                    b.must(mustQuery);
-                }
-                return b;
-            })
-        );
+        return builder;
     }
     
     /**
-     * Build Elasticsearch search request with query, pagination, and sorting
-     * 
-     * @param indexName target index name
+     * Build one batch of an export: like a cursor-mode page, but sorted only by the requested
+     * fields, if any, and _shard_doc, without counting hits, and optionally restricted to a slice
+     *
      * @param query Elasticsearch query
-     * @param searchRequest search request with pagination and sorting
+     * @param searchRequest search request with sorting
+     * @param batchSize hits per batch
+     * @param pitId point in time to search
+     * @param keepAlive how much longer to keep the point in time open
+     * @param searchAfter sort values of the last hit of the previous batch, or null for the first batch
+     * @param sliceId slice to search, from 0
+     * @param sliceCount number of slices the export is split into; 1 for no slicing
      * @return Elasticsearch search request builder
      */
-    public co.elastic.clients.elasticsearch.core.SearchRequest.Builder buildSearchRequest(Query query,
-                                                   ai.deeprunner.searcher.model.SearchRequest searchRequest) {
-        co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder = 
+    public co.elastic.clients.elasticsearch.core.SearchRequest.Builder buildExportSearchRequest(Query query,
+                                                   ai.deeprunner.searcher.model.SearchRequest searchRequest,
+                                                   int batchSize, String pitId, Time keepAlive,
+                                                   List<FieldValue> searchAfter, int sliceId, int sliceCount) {
+        co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder =
             new co.elastic.clients.elasticsearch.core.SearchRequest.Builder()
             .query(query)
-            .from(searchRequest.getPage() * searchRequest.getSize())
-            .size(searchRequest.getSize());
-        
-        // Apply sorting
-        applySorting(builder, searchRequest);
-        
+            .size(batchSize)
+            .pit(p -> p.id(pitId).keepAlive(keepAlive))
+            .trackTotalHits(t -> t.enabled(false));
+
+        if (searchRequest.getSort() != null && !searchRequest.getSort().isEmpty()) {
+            applySorting(builder, searchRequest);
+        }
+        builder.sort(s -> s.field(f -> f.field("_shard_doc").order(SortOrder.Asc)));
+        applyProjection(builder, searchRequest);
+        if (sliceCount > 1) {
+            builder.slice(s -> s.id(String.valueOf(sliceId)).max(sliceCount));
+        }
+        if (searchAfter != null) {
+            builder.searchAfter(searchAfter);
+        }
         return builder;
     }
     
@@ -270,6 +376,65 @@ public class SearchQueryBuilder {
         }
     }
     
+    /**
+     * Apply the hit-count mode: count exactly, count exactly up to a bound and report a lower bound
+     * beyond it, or not count at all, which lets Elasticsearch skip non-competitive hits
+     *
+     * @param builder search request builder
+     * @param totalHits "exact", "none" or a bound; search.total-hits.default when null
+     * @throws IllegalArgumentException if the mode is none of these
+     */
+    public void applyHitCounting(co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder,
+                                 String totalHits) {
+        String mode = totalHits == null || totalHits.isBlank() ? defaultTotalHits : totalHits.trim();
+        if (mode.equalsIgnoreCase("exact")) {
+            builder.trackTotalHits(t -> t.enabled(true));
+        } else if (mode.equalsIgnoreCase("none")) {
+            builder.trackTotalHits(t -> t.enabled(false));
+        } else {
+            int bound;
+            try {
+                bound = Integer.parseInt(mode);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("totalHits must be exact, none or a number");
+            }
+            if (bound < 0) {
+                throw new IllegalArgumentException("totalHits must be exact, none or a number");
+            }
+            builder.trackTotalHits(t -> t.count(bound));
+        }
+    }
+
+    /**
+     * Apply source filtering and doc value fields, so hits carry only the requested fields.
+     * Doc value fields alone replace the source, which is then not fetched.
+     *
+     * @param builder search request builder
+     * @param searchRequest search request with includes, excludes and doc value fields
+     */
+    public void applyProjection(co.elastic.clients.elasticsearch.core.SearchRequest.Builder builder,
+                                ai.deeprunner.searcher.model.SearchRequest searchRequest) {
+        List<String> includes = projectedFields(searchRequest.getIncludes());
+        List<String> excludes = projectedFields(searchRequest.getExcludes());
+        List<String> docValueFields = projectedFields(searchRequest.getDocValueFields());
+        if (!includes.isEmpty() || !excludes.isEmpty()) {
+            builder.source(s -> s.filter(f -> f.includes(includes).excludes(excludes)));
+        } else if (!docValueFields.isEmpty()) {
+            builder.source(s -> s.fetch(false));
+        }
+        for (String field : docValueFields) {
+            builder.docvalueFields(f -> f.field(field));
+        }
+    }
+
+    private static List<String> projectedFields(List<String> fields) {
+        return fields == null ? List.of() : fields.stream()
+            .filter(field -> field != null && !field.isBlank())
+            .map(String::trim)
+            .distinct()
+            .toList();
+    }
+    
     /**
      * Parse sort field string into SortField object
      * Format: "field:order" or just "field" (defaults to asc)
@@ -311,6 +476,15 @@ public class SearchQueryBuilder {
         return !indexName.contains(tenantId + "-") && indexName.contains("-");
     }
     
+    /**
+     * What a query template depends on
+     *
+     * @param textFields fields as requested, or null without query text
+     * @param filterKeys user filter keys, in request order
+     */
+    private record QueryShape(List<String> textFields, List<String> filterKeys) {
+    }
+    
     /**
      * Helper class for parsed sort field
      */
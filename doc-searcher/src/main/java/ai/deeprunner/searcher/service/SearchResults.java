@@ -0,0 +1,63 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.model.SearchRequest;
+import ai.deeprunner.searcher.model.SearchResult;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts Elasticsearch hits to search results, and works out the paging of a response
+ */
+final class SearchResults {
+
+    private SearchResults() {
+    }
+
+    static SearchResult of(Hit<Map> hit) {
+        return of(hit, false);
+    }
+
+    /**
+     * @param withSort whether to keep the hit's sort values, for searches with an explicit sort
+     */
+    @SuppressWarnings("unchecked")
+    static SearchResult of(Hit<Map> hit, boolean withSort) {
+        SearchResult result = new SearchResult();
+        result.setDocumentId(hit.id());
+        result.setScore(hit.score());
+        result.setSource(hit.source());
+        result.setIndex(hit.index());
+        if (!hit.fields().isEmpty()) {
+            Map<String, List<Object>> fields = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonData> field : hit.fields().entrySet()) {
+                fields.put(field.getKey(), field.getValue().to(List.class));
+            }
+            result.setFields(fields);
+        }
+        if (withSort && !hit.sort().isEmpty()) {
+            List<Object> sort = new ArrayList<>(hit.sort().size());
+            for (FieldValue value : hit.sort()) {
+                sort.add(value.isNull() ? null : value._get());
+            }
+            result.setSort(sort);
+        }
+        return result;
+    }
+
+    static boolean hasExplicitSort(SearchRequest searchRequest) {
+        return searchRequest.getSort() != null && !searchRequest.getSort().isEmpty();
+    }
+
+    /**
+     * @return number of pages of the given size the total fills, or null if hits were not counted
+     */
+    static Integer totalPages(Long total, int size) {
+        return total != null ? (int) Math.ceil((double) total / size) : null;
+    }
+}
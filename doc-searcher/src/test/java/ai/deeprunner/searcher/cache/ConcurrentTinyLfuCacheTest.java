@@ -0,0 +1,170 @@
+package ai.deeprunner.searcher.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Admission, eviction and expiry of {@link ConcurrentTinyLfuCache}
+ */
+class ConcurrentTinyLfuCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private final List<Removal> removals = new ArrayList<>();
+
+    @Test
+    void admitsEntryHeavierThanAnEvenSplitAcrossSegments() {
+        long budget = 1L << 20;
+        ConcurrentTinyLfuCache<String, byte[]> cache = new ConcurrentTinyLfuCache<>(
+            budget, budget / 4, TTL, (key, value) -> value.length, null, null);
+        byte[] page = new byte[(int) (budget / 5)];
+
+        cache.put("page", page);
+
+        assertThat(page.length).isGreaterThan((int) (budget / 64));
+        assertThat(cache.get("page")).isSameAs(page);
+        assertThat(cache.weightedSize()).isEqualTo(page.length);
+    }
+
+    @Test
+    void refusesEntryHeavierThanTheMaximumEntryWeight() {
+        ConcurrentTinyLfuCache<String, byte[]> cache = new ConcurrentTinyLfuCache<>(
+            1L << 20, 1024, TTL, (key, value) -> value.length, null, null);
+
+        cache.put("page", new byte[1025]);
+
+        assertThat(cache.get("page")).isNull();
+        assertThat(cache.stats().getRemovalsByCause()).containsEntry(RemovalCause.TOO_LARGE, 1L);
+    }
+
+    @Test
+    void staysWithinBudget() {
+        ConcurrentTinyLfuCache<String, String> cache = smallCache();
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key-" + i, "value-" + i);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        assertThat(cache.weightedSize()).isEqualTo(cache.size());
+        assertThat(removals).hasSize(1000 - (int) cache.size())
+            .allMatch(removal -> removal.cause() == RemovalCause.SIZE);
+    }
+
+    @Test
+    void frequentlyReadEntriesSurviveAScan() {
+        ConcurrentTinyLfuCache<String, String> cache = smallCache();
+        // fill first: the sketch stops growing, and discarding its history, once the cache is full
+        for (int i = 0; i < 100; i++) {
+            cache.put("filler-" + i, "value");
+        }
+        for (int i = 0; i < 10; i++) {
+            for (int read = 0; read < 10; read++) {
+                cache.get("hot-" + i);
+            }
+            cache.put("hot-" + i, "value");
+            for (int read = 0; read < 10; read++) {
+                cache.get("hot-" + i);
+            }
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("scan-" + i, "value");
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.peek("hot-" + i)).as("hot-" + i).isNotNull();
+        }
+    }
+
+    @Test
+    void tooLargeEntryIsReportedOnce() {
+        ConcurrentTinyLfuCache<String, String> cache = new ConcurrentTinyLfuCache<>(
+            100, 10, TTL, (key, value) -> value.length(), null, this::record);
+
+        cache.put("key", "more than ten");
+
+        assertThat(cache.get("key")).isNull();
+        assertThat(removals).containsExactly(new Removal("key", "more than ten", RemovalCause.TOO_LARGE));
+    }
+
+    @Test
+    void tooLargeReplacementDropsThePreviousValue() {
+        ConcurrentTinyLfuCache<String, String> cache = new ConcurrentTinyLfuCache<>(
+            100, 10, TTL, (key, value) -> value.length(), null, this::record);
+        cache.put("key", "small");
+
+        cache.put("key", "more than ten");
+
+        assertThat(cache.get("key")).isNull();
+        assertThat(cache.weightedSize()).isZero();
+        assertThat(removals).containsExactly(
+            new Removal("key", "small", RemovalCause.EXPLICIT),
+            new Removal("key", "more than ten", RemovalCause.TOO_LARGE));
+    }
+
+    @Test
+    void replacedValueIsReportedOnce() {
+        ConcurrentTinyLfuCache<String, String> cache = smallCache();
+        cache.put("key", "first");
+
+        cache.put("key", "second");
+
+        assertThat(cache.get("key")).isEqualTo("second");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(removals).containsExactly(new Removal("key", "first", RemovalCause.REPLACED));
+    }
+
+    @Test
+    void invalidatedValueIsReportedOnce() {
+        ConcurrentTinyLfuCache<String, String> cache = smallCache();
+        cache.put("key", "value");
+
+        cache.invalidate("key");
+        cache.invalidate("key");
+
+        assertThat(cache.get("key")).isNull();
+        assertThat(removals).containsExactly(new Removal("key", "value", RemovalCause.EXPLICIT));
+    }
+
+    @Test
+    void expiredEntryIsNotReturned() throws InterruptedException {
+        ConcurrentTinyLfuCache<String, String> cache = smallCache();
+        cache.put("key", "value", Duration.ofMillis(1));
+        Thread.sleep(5);
+
+        assertThat(cache.peek("key")).isNull();
+        assertThat(cache.get("key")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.stats().getMissCount()).isEqualTo(1);
+        assertThat(removals).containsExactly(new Removal("key", "value", RemovalCause.EXPIRED));
+    }
+
+    @Test
+    void entryWithinItsTtlIsReturned() {
+        ConcurrentTinyLfuCache<String, String> cache = smallCache();
+        cache.put("key", "value", Duration.ofMinutes(1));
+
+        assertThat(cache.get("key")).isEqualTo("value");
+        assertThat(cache.stats().getHitCount()).isEqualTo(1);
+    }
+
+    /**
+     * 100 entries of weight 1 in a single segment, so eviction order does not depend on hashing
+     */
+    private ConcurrentTinyLfuCache<String, String> smallCache() {
+        return new ConcurrentTinyLfuCache<>(100, 25, TTL, (key, value) -> 1, null, this::record);
+    }
+
+    private void record(String key, String value, RemovalCause cause) {
+        removals.add(new Removal(key, value, cause));
+    }
+
+    private record Removal(String key, String value, RemovalCause cause) {
+    }
+}
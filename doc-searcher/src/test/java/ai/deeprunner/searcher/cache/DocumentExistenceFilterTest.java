@@ -0,0 +1,131 @@
+package ai.deeprunner.searcher.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Races between lookups, writes and filter builds in {@link DocumentExistenceFilter}
+ */
+class DocumentExistenceFilterTest {
+
+    private static final DocumentKey KEY = new DocumentKey("acme", "invoice", "inv-1");
+    private static final DocumentKey UNKNOWN = new DocumentKey("acme", "invoice", "inv-404");
+
+    private DocumentExistenceFilter filter;
+
+    @AfterEach
+    void stop() {
+        if (filter != null) {
+            filter.stop();
+        }
+    }
+
+    @Test
+    void recordedMissIsAnswered() {
+        filter = filter((tenantId, documentType, consumer) -> consumer.accept(KEY.documentId()));
+
+        filter.recordMissing(KEY, false, filter.stamp(KEY));
+
+        assertThat(filter.isKnownMissing(KEY, true)).isTrue();
+    }
+
+    @Test
+    void writeDuringTheLookupCancelsTheMiss() {
+        filter = filter((tenantId, documentType, consumer) -> consumer.accept(KEY.documentId()));
+        long stamp = filter.stamp(KEY);
+
+        filter.recordWrite(KEY);
+        filter.recordMissing(KEY, false, stamp);
+
+        assertThat(filter.isKnownMissing(KEY, true)).isFalse();
+    }
+
+    @Test
+    void writeAfterTheMissDropsIt() {
+        filter = filter((tenantId, documentType, consumer) -> consumer.accept(KEY.documentId()));
+        filter.recordMissing(KEY, false, filter.stamp(KEY));
+
+        filter.recordWrite(KEY);
+
+        assertThat(filter.isKnownMissing(KEY, true)).isFalse();
+    }
+
+    @Test
+    void scopeInvalidationDuringTheLookupCancelsTheMiss() {
+        filter = filter((tenantId, documentType, consumer) -> consumer.accept(KEY.documentId()));
+        long stamp = filter.stamp(KEY);
+
+        filter.invalidateScope(KEY.tenantId(), KEY.documentType());
+        filter.recordMissing(KEY, false, stamp);
+
+        assertThat(filter.isKnownMissing(KEY, true)).isFalse();
+    }
+
+    @Test
+    void buildOverlappingAScopeInvalidationIsNotPublished() throws InterruptedException {
+        AtomicInteger scans = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        filter = filter((tenantId, documentType, consumer) -> {
+            if (scans.incrementAndGet() == 1) {
+                // a write this instance cannot name lands while the first scan runs
+                filter.invalidateScope(tenantId, documentType);
+            } else {
+                awaitQuietly(release);
+            }
+            consumer.accept(KEY.documentId());
+        });
+
+        assertThat(filter.isKnownMissing(UNKNOWN, true)).isFalse();
+        // the second scan only starts once the first build has finished
+        awaitUntil(() -> {
+            filter.isKnownMissing(UNKNOWN, true);
+            return scans.get() == 2;
+        });
+
+        assertThat(filter.stats().getReadyScopeCount()).isZero();
+        assertThat(filter.isKnownMissing(UNKNOWN, true)).isFalse();
+
+        release.countDown();
+        awaitUntil(() -> filter.stats().getReadyScopeCount() == 1);
+        assertThat(filter.isKnownMissing(UNKNOWN, true)).isTrue();
+        assertThat(filter.isKnownMissing(KEY, true)).isFalse();
+    }
+
+    @Test
+    void suspendedFilterAnswersNothing() {
+        filter = filter((tenantId, documentType, consumer) -> consumer.accept(KEY.documentId()));
+        filter.recordMissing(KEY, false, filter.stamp(KEY));
+
+        filter.suspend();
+
+        assertThat(filter.isKnownMissing(KEY, true)).isFalse();
+        assertThat(filter.stats().isSuspended()).isTrue();
+    }
+
+    private static DocumentExistenceFilter filter(DocumentIdSource idSource) {
+        return new DocumentExistenceFilter(idSource, true, 100, 0.01, 1000, 10, 60, 30, 10, 1000);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met in time").isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
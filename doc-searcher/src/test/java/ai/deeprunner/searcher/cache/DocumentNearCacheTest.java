@@ -0,0 +1,105 @@
+package ai.deeprunner.searcher.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Write ordering and off-heap block release of {@link DocumentNearCache}
+ */
+class DocumentNearCacheTest {
+
+    private static final DocumentKey KEY = new DocumentKey("acme", "invoice", "inv-1");
+
+    private final DocumentNearCache cache = new DocumentNearCache(new ObjectMapper(), true, 64 * 1024, 512, 300, 5000);
+
+    @Test
+    void returnsTheCachedSource() {
+        put(source("v1"), 1, 1, cache.stamp(KEY));
+
+        assertThat(cache.get(KEY)).isEqualTo(source("v1"));
+    }
+
+    @Test
+    void newerWriteDropsTheCopyAndRefusesItAfterwards() {
+        long stamp = cache.stamp(KEY);
+        put(source("v1"), 1, 1, stamp);
+
+        cache.invalidate(KEY, 2L, 1L);
+        assertThat(cache.get(KEY)).isNull();
+
+        // a fetch that read the old copy before the write finishes after it
+        put(source("v1"), 1, 1, stamp);
+        assertThat(cache.get(KEY)).isNull();
+
+        put(source("v2"), 2, 1, cache.stamp(KEY));
+        assertThat(cache.get(KEY)).isEqualTo(source("v2"));
+    }
+
+    @Test
+    void newerPrimaryTermSupersedesAHigherSequenceNumber() {
+        put(source("v1"), 10, 1, cache.stamp(KEY));
+
+        cache.invalidate(KEY, 2L, 2L);
+
+        assertThat(cache.get(KEY)).isNull();
+        put(source("v1"), 10, 1, cache.stamp(KEY));
+        assertThat(cache.get(KEY)).isNull();
+    }
+
+    @Test
+    void olderWriteKeepsTheNewerCopy() {
+        put(source("v5"), 5, 1, cache.stamp(KEY));
+
+        cache.invalidate(KEY, 3L, 1L);
+
+        assertThat(cache.get(KEY)).isEqualTo(source("v5"));
+    }
+
+    @Test
+    void writeOfUnknownVersionRefusesEveryCopy() {
+        put(source("v1"), 1, 1, cache.stamp(KEY));
+
+        cache.invalidate(KEY, null, null);
+
+        assertThat(cache.get(KEY)).isNull();
+        put(source("v9"), 9, 9, cache.stamp(KEY));
+        assertThat(cache.get(KEY)).isNull();
+    }
+
+    @Test
+    void scopeInvalidationRefusesFetchesStartedBeforeIt() {
+        long stamp = cache.stamp(KEY);
+        put(source("v1"), 1, 1, stamp);
+
+        cache.invalidateScope(KEY.tenantId(), KEY.documentType());
+
+        assertThat(cache.get(KEY)).isNull();
+        put(source("v1"), 1, 1, stamp);
+        assertThat(cache.get(KEY)).isNull();
+    }
+
+    @Test
+    void replacedCopiesReturnTheirBlocks() {
+        // far more writes than the arena has blocks: any leaked copy would make a later put fail
+        for (int seqNo = 1; seqNo <= 1000; seqNo++) {
+            put(source("v" + seqNo), seqNo, 1, cache.stamp(KEY));
+        }
+
+        assertThat(cache.get(KEY)).isEqualTo(source("v1000"));
+        Map<RemovalCause, Long> removals = cache.stats().getRemovalsByCause();
+        assertThat(removals).containsEntry(RemovalCause.REPLACED, 999L);
+        assertThat(removals).containsEntry(RemovalCause.TOO_LARGE, 0L);
+    }
+
+    private void put(Map<String, Object> source, long seqNo, long primaryTerm, long stamp) {
+        cache.put(KEY, source, seqNo, primaryTerm, seqNo, stamp);
+    }
+
+    private static Map<String, Object> source(String title) {
+        return Map.of("title", title, "body", "x".repeat(300));
+    }
+}
@@ -0,0 +1,70 @@
+package ai.deeprunner.searcher.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Counting, saturation and aging of {@link FrequencySketch}
+ */
+class FrequencySketchTest {
+
+    private static final int HOT = 0x5eed;
+
+    @Test
+    void countsRecordedAccesses() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(HOT);
+        }
+
+        assertThat(sketch.frequency(HOT)).isEqualTo(5);
+    }
+
+    @Test
+    void countsSaturateAtFifteen() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(HOT);
+        }
+
+        assertThat(sketch.frequency(HOT)).isEqualTo(15);
+    }
+
+    @Test
+    void countsAreHalvedOnceTheSamplePeriodElapses() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(HOT);
+        }
+
+        // the sample period is ten times the capacity
+        for (int i = 0; i < 10 * 1024; i++) {
+            sketch.increment(i * 31 + 1);
+        }
+
+        assertThat(sketch.frequency(HOT)).isBetween(7, 8);
+    }
+
+    @Test
+    void growingDiscardsHistory() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        sketch.increment(HOT);
+
+        sketch.ensureCapacity(1024);
+
+        assertThat(sketch.frequency(HOT)).isZero();
+    }
+
+    @Test
+    void shrinkingIsIgnored() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        sketch.increment(HOT);
+
+        sketch.ensureCapacity(16);
+
+        assertThat(sketch.frequency(HOT)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,104 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.SearchRequest;
+import ai.deeprunner.searcher.model.SearchResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Lookup accounting and tenant partition lifecycle of {@link InMemorySearchCache}
+ */
+class InMemorySearchCacheTest {
+
+    private static final String TENANT = "acme";
+    private static final String TYPE = "invoice";
+
+    private final SearchCacheGenerations generations = new SearchCacheGenerations(0);
+
+    @Test
+    void onlyFreshEntriesCountAsHits() {
+        InMemorySearchCache cache = cache(60);
+        SearchCacheKey key = key("unpaid");
+        cache.put(key, response(), cache.currentGeneration(key));
+
+        assertThat(cache.getEntry(key)).isNotNull();
+        assertThat(cache.getEntry(key("paid"))).isNull();
+        generations.bump(TENANT, TYPE);
+        assertThat(cache.getEntry(key)).isNotNull();
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.getHitCount()).isEqualTo(1);
+        assertThat(stats.getMissCount()).isEqualTo(1);
+        assertThat(stats.getInvalidatedHitCount()).isEqualTo(1);
+        assertThat(stats.getStaleHitCount()).isZero();
+        assertThat(stats.getHitRate()).isEqualTo(1.0 / 3);
+        assertThat(cache.tenantStats(TENANT).getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void staleEntriesAreCountedApartFromHits() {
+        InMemorySearchCache cache = cache(0);
+        SearchCacheKey key = key("unpaid");
+        cache.put(key, response(), cache.currentGeneration(key));
+
+        assertThat(cache.getEntry(key)).isNotNull();
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.getHitCount()).isZero();
+        assertThat(stats.getStaleHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void lookupsDoNotCreatePartitions() {
+        InMemorySearchCache cache = cache(60);
+
+        assertThat(cache.getEntry(key("unpaid"))).isNull();
+
+        assertThat(cache.tenantStats(TENANT)).isNull();
+        assertThat(cache.stats().getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void sweepDropsEmptyPartitions() {
+        InMemorySearchCache cache = cache(60);
+        SearchCacheKey key = key("unpaid");
+        cache.put(key, response(), cache.currentGeneration(key));
+        cache.clear();
+
+        cache.sweep();
+
+        assertThat(cache.tenantStats(TENANT)).isNull();
+        assertThat(cache.stats().getWeightedSize()).isZero();
+        assertThat(cache.stats().getRemovalsByCause()).containsEntry(RemovalCause.EXPLICIT, 1L);
+
+        cache.put(key, response(), cache.currentGeneration(key));
+        assertThat(cache.getEntry(key)).isNotNull();
+    }
+
+    @Test
+    void sweepKeepsPartitionsWithLiveEntries() {
+        InMemorySearchCache cache = cache(60);
+        SearchCacheKey key = key("unpaid");
+        cache.put(key, response(), cache.currentGeneration(key));
+
+        cache.sweep();
+
+        assertThat(cache.tenantStats(TENANT).getEntryCount()).isEqualTo(1);
+    }
+
+    private InMemorySearchCache cache(long softTtlSeconds) {
+        return new InMemorySearchCache(1L << 20, 1L << 16, 300, softTtlSeconds, false, 0,
+            generations, new SearchCacheTenantQuotas(), null);
+    }
+
+    private static SearchCacheKey key(String query) {
+        return SearchCacheKey.of(TENANT, TYPE, SearchRequest.builder().query(query).build());
+    }
+
+    private static SearchResponse response() {
+        return SearchResponse.builder().results(List.of()).total(0L).page(0).size(10).build();
+    }
+}
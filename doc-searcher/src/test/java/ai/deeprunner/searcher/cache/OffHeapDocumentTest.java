@@ -0,0 +1,85 @@
+package ai.deeprunner.searcher.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Block bookkeeping of {@link OffHeapArena} and the pin / drop protocol of {@link OffHeapDocument}
+ */
+class OffHeapDocumentTest {
+
+    private final OffHeapArena arena = new OffHeapArena(1024, 64);
+
+    @Test
+    void allocatesWholeBlocksUntilTheArenaIsFull() {
+        int[] first = arena.allocate(100);
+        int[] second = arena.allocate(1024 - 128);
+
+        assertThat(first).hasSize(2);
+        assertThat(second).hasSize(14).doesNotContain(first);
+        assertThat(arena.freeBytes()).isZero();
+        assertThat(arena.allocate(1)).isNull();
+
+        arena.free(first);
+        assertThat(arena.freeBytes()).isEqualTo(128);
+        assertThat(arena.allocate(128)).containsExactlyInAnyOrder(first);
+    }
+
+    @Test
+    void readsBackWhatWasWrittenAcrossBlocks() {
+        byte[] data = "a value longer than a single block of sixty-four bytes, spread over two"
+            .getBytes(StandardCharsets.UTF_8);
+        int[] blocks = arena.allocate(data.length);
+
+        arena.write(blocks, data);
+
+        assertThat(arena.read(blocks, data.length)).isEqualTo(data);
+    }
+
+    @Test
+    void droppedDocumentIsReleasedAtOnceWhenNotPinned() {
+        OffHeapDocument document = document();
+
+        document.drop(arena);
+
+        assertThat(arena.freeBytes()).isEqualTo(arena.capacity());
+        assertThat(document.pin()).isFalse();
+    }
+
+    @Test
+    void droppedDocumentIsReleasedOnceItsLastReaderUnpins() {
+        OffHeapDocument document = document();
+        assertThat(document.pin()).isTrue();
+        assertThat(document.pin()).isTrue();
+
+        document.drop(arena);
+        assertThat(arena.freeBytes()).isEqualTo(arena.capacity() - 128);
+        document.unpin(arena);
+        assertThat(arena.freeBytes()).isEqualTo(arena.capacity() - 128);
+        document.unpin(arena);
+
+        assertThat(arena.freeBytes()).isEqualTo(arena.capacity());
+        assertThat(document.pin()).isFalse();
+        // a second drop must not hand the blocks out twice
+        document.drop(arena);
+        assertThat(arena.freeBytes()).isEqualTo(arena.capacity());
+    }
+
+    @Test
+    void unpinnedDocumentStaysAllocatedUntilDropped() {
+        OffHeapDocument document = document();
+        assertThat(document.pin()).isTrue();
+
+        document.unpin(arena);
+
+        assertThat(arena.freeBytes()).isEqualTo(arena.capacity() - 128);
+        assertThat(document.pin()).isTrue();
+    }
+
+    private OffHeapDocument document() {
+        return new OffHeapDocument(arena.allocate(100), 100, 1, 1, 1, 0);
+    }
+}
@@ -0,0 +1,127 @@
+package ai.deeprunner.searcher.cache;
+
+import ai.deeprunner.searcher.model.SearchRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Requests share a {@link SearchCacheKey} only when Elasticsearch would see the same search
+ */
+class SearchCacheKeyTest {
+
+    private static final String TENANT = "acme";
+    private static final String TYPE = "invoice";
+
+    @Test
+    void whitespaceInTheQueryIsIgnored() {
+        assertSameKey(
+            SearchRequest.builder().query("  unpaid   invoice ").build(),
+            SearchRequest.builder().query("unpaid\tinvoice").build());
+    }
+
+    @Test
+    void queryCaseIsKept() {
+        assertDifferentKeys(
+            SearchRequest.builder().query("ABC").build(),
+            SearchRequest.builder().query("abc").build());
+    }
+
+    @Test
+    void fieldAndFilterOrderIsIgnored() {
+        Map<String, Object> filters = new LinkedHashMap<>();
+        filters.put("status", "open");
+        filters.put("category", List.of("b", "a"));
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("category", List.of("a", "b", "a"));
+        reordered.put("status", "open");
+
+        assertSameKey(
+            SearchRequest.builder().query("invoice").fields(List.of("title", "content")).filters(filters).build(),
+            SearchRequest.builder().query("invoice").fields(List.of("content", "title")).filters(reordered).build());
+    }
+
+    @Test
+    void rangeOperatorOrderIsIgnored() {
+        Map<String, Object> range = new LinkedHashMap<>();
+        range.put("gte", 10);
+        range.put("lt", 20);
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("lt", 20L);
+        reordered.put("gte", 10L);
+
+        assertSameKey(
+            SearchRequest.builder().filters(Map.of("amount", range)).build(),
+            SearchRequest.builder().filters(Map.of("amount", reordered)).build());
+    }
+
+    @Test
+    void termsSentAsTheSameStringCollide() {
+        assertSameKey(
+            SearchRequest.builder().filters(Map.of("code", 1)).build(),
+            SearchRequest.builder().filters(Map.of("code", "1")).build());
+        assertSameKey(
+            SearchRequest.builder().filters(Map.of("code", 1)).build(),
+            SearchRequest.builder().filters(Map.of("code", 1L)).build());
+    }
+
+    @Test
+    void numbersKeepTheirLiteral() {
+        assertDifferentKeys(
+            SearchRequest.builder().filters(Map.of("code", 1)).build(),
+            SearchRequest.builder().filters(Map.of("code", 1.0)).build());
+        assertDifferentKeys(
+            SearchRequest.builder().filters(Map.of("code", List.of(1))).build(),
+            SearchRequest.builder().filters(Map.of("code", List.of(1.0))).build());
+        assertDifferentKeys(
+            SearchRequest.builder().filters(Map.of("amount", Map.of("gte", 1))).build(),
+            SearchRequest.builder().filters(Map.of("amount", Map.of("gte", 1.0))).build());
+    }
+
+    @Test
+    void filterValueCaseIsKept() {
+        assertDifferentKeys(
+            SearchRequest.builder().filters(Map.of("sku", "ABC")).build(),
+            SearchRequest.builder().filters(Map.of("sku", "abc")).build());
+        assertDifferentKeys(
+            SearchRequest.builder().filters(Map.of("sku", List.of("ABC"))).build(),
+            SearchRequest.builder().filters(Map.of("sku", List.of("abc"))).build());
+    }
+
+    @Test
+    void sortPriorityIsKept() {
+        assertSameKey(
+            SearchRequest.builder().sort(List.of("createdAt:DESC", "title")).build(),
+            SearchRequest.builder().sort(List.of("createdAt:desc", "title:asc")).build());
+        assertDifferentKeys(
+            SearchRequest.builder().sort(List.of("createdAt:desc", "title")).build(),
+            SearchRequest.builder().sort(List.of("title", "createdAt:desc")).build());
+    }
+
+    @Test
+    void rebuiltRequestMapsToTheSameKey() {
+        Map<String, Object> filters = new LinkedHashMap<>();
+        filters.put("code", 1.0);
+        filters.put("amount", Map.of("gte", 10, "lt", 20.5));
+        filters.put("category", List.of("b", "a"));
+        SearchCacheKey key = SearchCacheKey.of(TENANT, TYPE,
+            SearchRequest.builder().query("Unpaid  Invoice").filters(filters).page(2).size(20).build());
+
+        assertThat(SearchCacheKey.of(TENANT, TYPE, key.toRequest())).isEqualTo(key);
+    }
+
+    private static void assertSameKey(SearchRequest first, SearchRequest second) {
+        SearchCacheKey firstKey = SearchCacheKey.of(TENANT, TYPE, first);
+        SearchCacheKey secondKey = SearchCacheKey.of(TENANT, TYPE, second);
+        assertThat(firstKey).isEqualTo(secondKey);
+        assertThat(firstKey.getHash()).isEqualTo(secondKey.getHash());
+    }
+
+    private static void assertDifferentKeys(SearchRequest first, SearchRequest second) {
+        assertThat(SearchCacheKey.of(TENANT, TYPE, first)).isNotEqualTo(SearchCacheKey.of(TENANT, TYPE, second));
+    }
+}
@@ -0,0 +1,103 @@
+package ai.deeprunner.searcher.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Concurrent identical calls through {@link SingleFlight} share one load
+ */
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> flights.execute("key", () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "value";
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> follower = executor.submit(() -> flights.execute("key", () -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            awaitCoalesced(1);
+            release.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+            assertThat(loads).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failureIsSharedWithJoinedCallers() {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> leader = flights.executeAsync("key", () -> load);
+        CompletableFuture<String> follower = flights.executeAsync("key", () -> CompletableFuture.completedFuture("other"));
+
+        load.completeExceptionally(new IOException("unavailable"));
+
+        assertThat(flights.coalescedCount()).isEqualTo(1);
+        assertThatThrownBy(leader::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IOException.class);
+        assertThatThrownBy(follower::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void completedFlightIsNotReused() throws IOException {
+        flights.execute("key", () -> "first");
+
+        assertThat(flights.execute("key", () -> "second")).isEqualTo("second");
+        assertThat(flights.coalescedCount()).isZero();
+    }
+
+    @Test
+    void joinedCallerCannotCompleteTheSharedFlight() {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> leader = flights.executeAsync("key", () -> load);
+        CompletableFuture<String> follower = flights.executeAsync("key", () -> load);
+
+        follower.complete("forged");
+        load.complete("value");
+
+        assertThat(leader.join()).isEqualTo("value");
+    }
+
+    private void awaitCoalesced(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flights.coalescedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(flights.coalescedCount()).isEqualTo(count);
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
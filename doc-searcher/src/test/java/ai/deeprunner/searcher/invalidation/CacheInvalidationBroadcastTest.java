@@ -0,0 +1,139 @@
+package ai.deeprunner.searcher.invalidation;
+
+import ai.deeprunner.indexer.event.DocumentChangedEvent;
+import ai.deeprunner.searcher.cache.DocumentExistenceFilter;
+import ai.deeprunner.searcher.cache.DocumentKey;
+import ai.deeprunner.searcher.cache.DocumentNearCache;
+import ai.deeprunner.searcher.cache.SearchCacheGenerations;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.stream.binder.test.InputDestination;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Round trips of invalidation broadcasts through the in-memory test binder
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+    "spring.cloud.stream.default-binder=integration",
+    "spring.cloud.function.definition=cacheInvalidation",
+    // apart, so the test sees what is published instead of the local consumer taking it
+    "spring.cloud.stream.bindings.cacheInvalidation-out-0.destination=" + CacheInvalidationBroadcastTest.PUBLISHED,
+    "spring.cloud.stream.bindings.cacheInvalidation-in-0.destination=" + CacheInvalidationBroadcastTest.RECEIVED,
+    "search.cache.invalidation.broadcast.coalesce-ms=50"
+})
+class CacheInvalidationBroadcastTest {
+
+    static final String PUBLISHED = "search-cache-invalidation-published";
+    static final String RECEIVED = "search-cache-invalidation-received";
+    private static final long RECEIVE_TIMEOUT_MS = 2000;
+
+    @Autowired
+    private ApplicationEventPublisher events;
+
+    @Autowired
+    private InputDestination input;
+
+    @Autowired
+    private OutputDestination output;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private SearchCacheGenerations generations;
+
+    @MockBean
+    private DocumentNearCache documentCache;
+
+    @MockBean
+    private DocumentExistenceFilter existenceFilter;
+
+    @BeforeEach
+    void drainOutput() {
+        output.clear();
+        clearInvocations(generations, documentCache, existenceFilter);
+    }
+
+    @Test
+    void localWritesAreCoalescedIntoOneBroadcast() throws Exception {
+        events.publishEvent(new DocumentChangedEvent("acme", "invoice", "1", DocumentChangedEvent.Operation.INDEXED, 5L, 1L));
+        events.publishEvent(new DocumentChangedEvent("acme", "invoice", "2", DocumentChangedEvent.Operation.DELETED, 6L, 1L));
+
+        CacheInvalidationMessage message = receive();
+        assertThat(message.getScopes()).containsExactly(new CacheInvalidationMessage.Scope("acme", "invoice"));
+        assertThat(message.getDocuments()).extracting(CacheInvalidationMessage.DocumentRef::getDocumentId)
+            .containsExactlyInAnyOrder("1", "2");
+        assertThat(output.receive(200, PUBLISHED)).isNull();
+    }
+
+    @Test
+    void peerBroadcastInvalidatesGenerationsAndDocuments() throws Exception {
+        send(new CacheInvalidationMessage("peer",
+            List.of(new CacheInvalidationMessage.Scope("acme", "invoice")),
+            List.of(new CacheInvalidationMessage.DocumentRef("acme", "invoice", "7", 12L, 2L)),
+            System.currentTimeMillis()));
+
+        DocumentKey key = new DocumentKey("acme", "invoice", "7");
+        verify(generations).bump("acme", "invoice");
+        verify(documentCache).invalidate(key, 12L, 2L);
+        verify(existenceFilter).recordWrite(key);
+        verify(documentCache, never()).invalidateScope("acme", "invoice");
+    }
+
+    @Test
+    void peerBroadcastWithoutDocumentsInvalidatesScope() throws Exception {
+        send(new CacheInvalidationMessage("peer",
+            List.of(new CacheInvalidationMessage.Scope("acme", "invoice")), null, System.currentTimeMillis()));
+
+        verify(generations).bump("acme", "invoice");
+        verify(documentCache).invalidateScope("acme", "invoice");
+        verify(existenceFilter).invalidateScope("acme", "invoice");
+    }
+
+    @Test
+    void ownBroadcastIsSkipped() throws Exception {
+        events.publishEvent(new DocumentChangedEvent("acme", "invoice", "1", DocumentChangedEvent.Operation.INDEXED, 5L, 1L));
+        CacheInvalidationMessage own = receive();
+
+        send(own);
+
+        verifyNoInteractions(generations, documentCache, existenceFilter);
+    }
+
+    private CacheInvalidationMessage receive() throws Exception {
+        Message<byte[]> message = output.receive(RECEIVE_TIMEOUT_MS, PUBLISHED);
+        assertThat(message).isNotNull();
+        return objectMapper.readValue(message.getPayload(), CacheInvalidationMessage.class);
+    }
+
+    private void send(CacheInvalidationMessage message) throws Exception {
+        input.send(MessageBuilder.withPayload(objectMapper.writeValueAsBytes(message)).build(), RECEIVED);
+    }
+
+    @Configuration
+    @EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class})
+    @Import({TestChannelBinderConfiguration.class, CacheInvalidationBroadcaster.class, CacheInvalidationConsumer.class})
+    static class InvalidationConfig {
+    }
+}
@@ -0,0 +1,77 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.model.SearchRequest;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import jakarta.json.stream.JsonGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The templates behind {@link SearchQueryBuilder#buildQuery} must bind the same DSL the plan builds
+ * clause by clause
+ */
+class QueryPlanTest {
+
+    private static final String TENANT = "acme";
+
+    private final SearchQueryBuilder queryBuilder = new SearchQueryBuilder();
+    private final JsonpMapper mapper = new JacksonJsonpMapper();
+
+    @Test
+    void templateMatchesPlanWithoutText() {
+        assertSameQuery(SearchRequest.builder().build());
+    }
+
+    @Test
+    void templateMatchesPlanForOneField() {
+        assertSameQuery(SearchRequest.builder().query("invoice").fields(List.of("title")).build());
+    }
+
+    @Test
+    void templateMatchesPlanForSeveralFields() {
+        assertSameQuery(SearchRequest.builder().query("invoice").fields(List.of("title", "content", "tags")).build());
+    }
+
+    @Test
+    void templateMatchesPlanForEveryFilterKind() {
+        Map<String, Object> filters = new LinkedHashMap<>();
+        filters.put("status", "open");
+        filters.put("category", List.of("b", "a", "b"));
+        filters.put("createdAt", Map.of("gte", "now-1d", "lt", "now"));
+        filters.put("sku", Map.of("prefix", "INV-"));
+        filters.put("archivedAt", Map.of("exists", false));
+        assertSameQuery(SearchRequest.builder().query("invoice").filters(filters).build());
+        assertSameQuery(SearchRequest.builder().filters(filters).build());
+    }
+
+    @Test
+    void templateMatchesPlanForRepeatedFixedFilters() {
+        Map<String, Object> filters = new LinkedHashMap<>();
+        filters.put(QueryTemplate.TENANT_FIELD, TENANT);
+        filters.put(QueryTemplate.DELETED_FIELD, false);
+        assertSameQuery(SearchRequest.builder().filters(filters).build());
+    }
+
+    private void assertSameQuery(SearchRequest request) {
+        Query planned = queryBuilder.plan(request, TENANT).toQuery();
+        // twice: once compiling the template, once from the cache
+        assertThat(json(queryBuilder.buildQuery(request, TENANT))).isEqualTo(json(planned));
+        assertThat(json(queryBuilder.buildQuery(request, TENANT))).isEqualTo(json(planned));
+    }
+
+    private String json(Query query) {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(json)) {
+            query.serialize(generator, mapper);
+        }
+        return json.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package ai.deeprunner.searcher.service;
+
+import ai.deeprunner.searcher.model.SearchRequest;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchQueryBuilderTest {
+
+    private static final String TENANT = "acme";
+
+    private final SearchQueryBuilder queryBuilder = new SearchQueryBuilder();
+
+    @Test
+    void searchWithoutTextIsConstantScored() {
+        Query query = queryBuilder.buildQuery(SearchRequest.builder().query("  ").build(), TENANT);
+
+        assertThat(query.isConstantScore()).isTrue();
+        List<Query> filters = query.constantScore().filter().bool().filter();
+        assertThat(filters).hasSize(2);
+        assertTerm(filters.get(0), QueryTemplate.TENANT_FIELD, TENANT);
+        assertTerm(filters.get(1), QueryTemplate.DELETED_FIELD, "false");
+    }
+
+    @Test
+    void singleFieldIsMatched() {
+        Query query = queryBuilder.buildQuery(
+            SearchRequest.builder().query("invoice").fields(List.of("title")).build(), TENANT);
+
+        Query scoring = query.bool().must().get(0);
+        assertThat(scoring.isMatch()).isTrue();
+        assertThat(scoring.match().field()).isEqualTo("title");
+        assertThat(scoring.match().query().stringValue()).isEqualTo("invoice");
+    }
+
+    @Test
+    void severalFieldsAreMostFieldsMultiMatch() {
+        Query query = queryBuilder.buildQuery(SearchRequest.builder()
+            .query("invoice")
+            .fields(List.of("title", " content ", "title"))
+            .build(), TENANT);
+
+        assertThat(query.isBool()).isTrue();
+        assertThat(query.bool().must()).hasSize(1);
+        Query scoring = query.bool().must().get(0);
+        assertThat(scoring.isMultiMatch()).isTrue();
+        assertThat(scoring.multiMatch().type()).isEqualTo(TextQueryType.MostFields);
+        assertThat(scoring.multiMatch().fields()).containsExactly("title", "content");
+        assertThat(query.bool().filter()).hasSize(2);
+    }
+
+    @Test
+    void textWithoutFieldsSearchesTitleAndContent() {
+        Query query = queryBuilder.buildQuery(SearchRequest.builder().query("invoice").build(), TENANT);
+
+        assertThat(query.bool().must().get(0).multiMatch().fields()).containsExactly("title", "content");
+    }
+
+    @Test
+    void tenantFilterIsAddedOnce() {
+        Query query = queryBuilder.buildQuery(SearchRequest.builder()
+            .filters(Map.of(QueryTemplate.TENANT_FIELD, TENANT))
+            .build(), TENANT);
+
+        List<Query> filters = query.constantScore().filter().bool().filter();
+        assertThat(filters).hasSize(2);
+        assertThat(filters.stream().filter(f -> f.isTerm() && f.term().field().equals(QueryTemplate.TENANT_FIELD)))
+            .hasSize(1);
+    }
+
+    @Test
+    void otherTenantFilterIsKept() {
+        Query query = queryBuilder.buildQuery(SearchRequest.builder()
+            .filters(Map.of(QueryTemplate.TENANT_FIELD, "globex"))
+            .build(), TENANT);
+
+        List<Query> filters = query.constantScore().filter().bool().filter();
+        assertThat(filters).hasSize(3);
+        assertTerm(filters.get(0), QueryTemplate.TENANT_FIELD, TENANT);
+        assertTerm(filters.get(1), QueryTemplate.TENANT_FIELD, "globex");
+    }
+
+    @Test
+    void templatesAreReusedAcrossTenants() {
+        SearchRequest request = SearchRequest.builder().query("invoice").filters(Map.of("status", "open")).build();
+
+        Query first = queryBuilder.buildQuery(request, TENANT);
+        Query second = queryBuilder.buildQuery(request, "globex");
+
+        assertTerm(first.bool().filter().get(0), QueryTemplate.TENANT_FIELD, TENANT);
+        assertTerm(second.bool().filter().get(0), QueryTemplate.TENANT_FIELD, "globex");
+        assertTerm(second.bool().filter().get(1), "status", "open");
+    }
+
+    private static void assertTerm(Query query, String field, String value) {
+        assertThat(query.isTerm()).isTrue();
+        assertThat(query.term().field()).isEqualTo(field);
+        assertThat(query.term().value().stringValue()).isEqualTo(value);
+    }
+}
@@ -0,0 +1,67 @@
+#!/bin/bash
+
+# Load test for comparing the blocking and async search paths at high concurrency
+# Run it once against a searcher started with SEARCH_ASYNC_ENABLED=false and once with
+# SEARCH_ASYNC_ENABLED=true, same data and settings otherwise. A small Tomcat pool
+# (e.g. SERVER_TOMCAT_THREADS_MAX=50) and ELASTICSEARCH_MAX_CONNECTIONS_PER_ROUTE raised to at
+# least the concurrency make the difference visible; the queries are random, so most miss the cache.
+#
+# Usage: ./search-concurrency-benchmark.sh [requests] [concurrency]
+# The search rate limit is per tenant (burst 25), so requests are spread over TENANTS.
+
+BASE_URL="${BASE_URL:-http://localhost:8080/api/v1/documents}"
+REQUESTS="${1:-2000}"
+CONCURRENCY="${2:-200}"
+read -r -a tenants <<< "${TENANTS:-tenant1 tenant2}"
+DOC_TYPE="${DOC_TYPE:-product}"
+FIELDS="${FIELDS:-title,description}"
+
+declare -a keywords=(
+    "sample" "document" "product" "premium" "quality" "technology" "guide" "electronics"
+    "gadgets" "office" "software" "hardware" "gaming" "business" "design" "performance"
+)
+
+results_file=$(mktemp)
+trap 'rm -f "$results_file"' EXIT
+
+echo "=========================================="
+echo "Search concurrency benchmark"
+echo "=========================================="
+echo "  Base URL: $BASE_URL"
+echo "  Requests: $REQUESTS, concurrency: $CONCURRENCY"
+echo "  Tenants: ${tenants[*]}"
+echo ""
+
+# One line per request: tenant and query, fired by CONCURRENCY parallel curls
+for ((i=0; i<REQUESTS; i++)); do
+    tenant="${tenants[$((i % ${#tenants[@]}))]}"
+    query="${keywords[$((RANDOM % ${#keywords[@]}))]}%20${keywords[$((RANDOM % ${#keywords[@]}))]}"
+    echo "$tenant $query"
+done > "$results_file.in"
+
+start_ns=$(date +%s%N)
+xargs -P "$CONCURRENCY" -L 1 sh -c \
+    'curl -s -o /dev/null -w "%{http_code} %{time_total}\n" --max-time 30 -H "X-Tenant-ID: $0" \
+        "'"$BASE_URL"'?query=$1&fields='"$FIELDS"'&documentType='"$DOC_TYPE"'&page=0&size=10"' \
+    < "$results_file.in" > "$results_file"
+end_ns=$(date +%s%N)
+rm -f "$results_file.in"
+
+elapsed_ms=$(( (end_ns - start_ns) / 1000000 ))
+
+echo "Status codes:"
+awk '{ print $1 }' "$results_file" | sort | uniq -c | sed 's/^/  /'
+echo ""
+echo "Throughput: $(awk "BEGIN {printf \"%.1f\", $REQUESTS * 1000 / $elapsed_ms}") requests/s over ${elapsed_ms}ms"
+
+# Latency percentiles of successful requests
+awk '$1 == 200 { printf "%.0f\n", $2 * 1000 }' "$results_file" | sort -n | awk '
+    { latency[NR] = $1 }
+    END {
+        if (NR == 0) { print "No successful requests"; exit }
+        printf "Latency (ms, 200s only): p50=%d p95=%d p99=%d max=%d\n",
+            latency[int(NR * 0.50) > 0 ? int(NR * 0.50) : 1],
+            latency[int(NR * 0.95) > 0 ? int(NR * 0.95) : 1],
+            latency[int(NR * 0.99) > 0 ? int(NR * 0.99) : 1],
+            latency[NR]
+    }'